@@ -0,0 +1,62 @@
+package ru.perveevm.polygon2ejudge.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.perveevm.polygon2ejudge.EjudgeConfigParser;
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EjudgeConfigParserBenchmark {
+    @Param({"1", "10", "100"})
+    public int problems;
+
+    private Path serveCfgPath;
+    private EjudgeConfigParser parser;
+
+    @Setup
+    public void setUp() throws IOException {
+        serveCfgPath = Files.createTempFile("serve", ".cfg");
+        Files.writeString(serveCfgPath, Fixtures.serveCfg(problems));
+        parser = new EjudgeConfigParser();
+        parser.parse(serveCfgPath);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(serveCfgPath);
+    }
+
+    @Benchmark
+    public EjudgeConfigParser parse() throws IOException {
+        EjudgeConfigParser result = new EjudgeConfigParser();
+        result.parse(serveCfgPath);
+        return result;
+    }
+
+    @Benchmark
+    public String serialize() {
+        return parser.toString();
+    }
+
+    @Benchmark
+    public void lookups(final Blackhole blackhole) throws ContestManagerException {
+        for (int id = 1; id <= problems; id++) {
+            blackhole.consume(parser.getProblemInternalNameById(id));
+            blackhole.consume(parser.getProblemIdByInternalName("problem-" + id));
+            blackhole.consume(parser.getProblemIdByShortName(Fixtures.shortName(id)));
+        }
+    }
+}
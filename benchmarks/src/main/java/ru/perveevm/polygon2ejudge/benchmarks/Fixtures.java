@@ -0,0 +1,168 @@
+package ru.perveevm.polygon2ejudge.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Synthetic serve.cfg, problem.xml and statement documents of configurable size.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public final class Fixtures {
+    private static final long SEED = 42;
+
+    private Fixtures() {
+    }
+
+    public static String serveCfg(final int problems) {
+        StringBuilder result = new StringBuilder();
+        result.append("""
+                # -*- coding: utf-8 -*-
+
+                contest_time = 300
+                score_system = kirov
+                compile_dir = "../../compile/var/compile"
+
+                [language]
+                id = 3
+                short_name = "g++"
+
+                """);
+        for (int i = 1; i <= problems; i++) {
+            result.append(problemSection(i)).append(System.lineSeparator());
+        }
+        result.append("""
+                [tester]
+                name = Generic
+                arch = ""
+                """);
+        return result.toString();
+    }
+
+    public static String problemSection(final int id) {
+        return String.format("""
+                [problem]
+                id = %d
+                short_name = "%s"
+                long_name = "Problem %d"
+                internal_name = "problem-%d"
+                extid = "polygon:%d"
+                use_stdin
+                use_stdout
+                xml_file = "statement.xml"
+                test_pat = "%%02d"
+                use_corr
+                corr_pat = "%%02d.a"
+                time_limit = 1
+                max_vm_size = 256M
+                check_cmd = "check"
+                solution_cmd = "solution"
+                """, id, shortName(id), id, id, 100000 + id);
+    }
+
+    public static String shortName(final int id) {
+        StringBuilder result = new StringBuilder();
+        for (int i = id; i > 0; i = (i - 1) / 26) {
+            result.insert(0, (char) ('A' + (i - 1) % 26));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns problem.xml with {@code tests} tests split into {@code groups} contiguous groups. The first two tests
+     * are samples, and a smaller "pretests" testset precedes the "tests" one.
+     */
+    public static String problemXml(final int tests, final int groups) {
+        Random random = new Random(SEED);
+        StringBuilder result = new StringBuilder();
+        result.append("""
+                <?xml version="1.0" encoding="utf-8" standalone="no"?>
+                <problem revision="42" short-name="bench" url="https://polygon.codeforces.com/p/bench/bench">
+                    <names>
+                        <name language="russian" value="Benchmark"/>
+                    </names>
+                    <judging cpu-name="Intel(R) Core(TM) i3-8100 CPU @ 3.60GHz" cpu-speed="3600" input-file=""
+                             output-file="">
+                        <testset name="pretests">
+                            <time-limit>1000</time-limit>
+                            <memory-limit>268435456</memory-limit>
+                            <test-count>1</test-count>
+                            <tests>
+                                <test method="manual" sample="true"/>
+                            </tests>
+                        </testset>
+                        <testset name="tests">
+                            <time-limit>2000</time-limit>
+                            <memory-limit>268435456</memory-limit>
+                """);
+        result.append(String.format("            <test-count>%d</test-count>%n", tests));
+        result.append("            <input-path-pattern>tests/%02d</input-path-pattern>").append(System.lineSeparator());
+        result.append("            <tests>").append(System.lineSeparator());
+        for (int i = 0; i < tests; i++) {
+            int group = groupOf(i, tests, groups);
+            result.append(String.format("                <test method=\"%s\"%s points=\"%d\" group=\"%d\"%s/>%n",
+                    i % 3 == 0 ? "manual" : "generated",
+                    i % 3 == 0 ? "" : String.format(" cmd=\"gen %d %d\"", i, random.nextInt(1000000)),
+                    group == 0 ? 0 : 1 + random.nextInt(3),
+                    group,
+                    i < 2 ? " sample=\"true\"" : ""));
+        }
+        result.append("""
+                            </tests>
+                        </testset>
+                    </judging>
+                    <files>
+                        <resources>
+                            <file path="files/testlib.h" type="h.g++"/>
+                        </resources>
+                    </files>
+                </problem>
+                """);
+        return result.toString();
+    }
+
+    public static int groupOf(final int test, final int tests, final int groups) {
+        return (int) ((long) test * groups / tests);
+    }
+
+    /**
+     * Returns a Polygon-like HTML statement with {@code paragraphs} paragraphs of text, formulas and images.
+     */
+    public static String statementHtml(final int paragraphs) {
+        StringBuilder legend = new StringBuilder();
+        for (int i = 0; i < paragraphs; i++) {
+            legend.append(String.format("""
+                    <p>Paragraph %d of the legend with a formula $$$a_{%d} \\le 10^9$$$ and a displayed one
+                    $$$$$$\\sum_{i=1}^{n} a_i$$$$$$, some <b>bold</b> and <i>italic</i> text.</p>
+                    """, i, i));
+            if (i % 10 == 0) {
+                legend.append(String.format("<center><img src=\"image%d.png\"/></center>%n", i));
+            }
+        }
+
+        return String.format("""
+                <!DOCTYPE html>
+                <html>
+                <head>
+                <meta http-equiv="Content-Type" content="text/html; charset=UTF-8">
+                <link href="problem-statement.css" rel="stylesheet" type="text/css">
+                <title>Benchmark</title>
+                </head>
+                <body>
+                <div class="problem-statement">
+                <div class="header"><div class="title">A. Benchmark</div>
+                <div class="time-limit"><div class="property-title">time limit per test</div>2 seconds</div>
+                </div>
+                <div class="legend">
+                %s
+                </div>
+                <div class="input-specification"><div class="section-title">Input</div><p>Input.</p></div>
+                <div class="output-specification"><div class="section-title">Output</div><p>Output.</p></div>
+                <div class="sample-tests"><div class="section-title">Example</div>
+                <div class="sample-test"><div class="input"><pre class="content">1 2</pre></div>
+                <div class="output"><pre class="content">3</pre></div></div></div>
+                </div>
+                </body>
+                </html>
+                """, legend);
+    }
+}
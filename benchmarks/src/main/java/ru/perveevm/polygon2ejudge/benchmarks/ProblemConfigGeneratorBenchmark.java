@@ -0,0 +1,78 @@
+package ru.perveevm.polygon2ejudge.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.perveevm.polygon.exceptions.api.PolygonSessionException;
+import ru.perveevm.polygon2ejudge.ProblemConfigGenerator;
+import ru.perveevm.polygon2ejudge.ProblemMetadata;
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates serve.cfg sections for a contest of {@code problems} problems with {@code tests} tests each. Polygon
+ * responses come from {@link StubPolygonSession}.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProblemConfigGeneratorBenchmark {
+    private static final String STATEMENTS_LANG = "russian";
+
+    @Param({"10", "1000", "10000"})
+    public int tests;
+
+    @Param({"1", "10"})
+    public int problems;
+
+    @Param({"1", "10"})
+    public int groups;
+
+    private Path contestDirectory;
+    private ProblemConfigGenerator generator;
+    private StubPolygonSession session;
+    private final List<Path> problemDirectories = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        contestDirectory = Files.createTempDirectory("contest");
+        Path gvaluerPath = Files.writeString(contestDirectory.resolve("gvaluer"), "#!/bin/sh\n");
+        generator = new ProblemConfigGenerator(STATEMENTS_LANG, gvaluerPath, null);
+        int groupCount = Math.min(tests, groups);
+        session = new StubPolygonSession(STATEMENTS_LANG, groupCount);
+
+        String problemXml = Fixtures.problemXml(tests, groupCount);
+        problemDirectories.clear();
+        for (int i = 1; i <= problems; i++) {
+            Path problemDirectory = contestDirectory.resolve("problems").resolve("problem-" + i);
+            Files.createDirectories(problemDirectory.resolve("tmp"));
+            Files.writeString(problemDirectory.resolve("tmp").resolve("problem.xml"), problemXml);
+            problemDirectories.add(problemDirectory);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(contestDirectory.toFile());
+    }
+
+    @Benchmark
+    public void generate(final Blackhole blackhole) throws PolygonSessionException, ContestManagerException {
+        for (int i = 0; i < problemDirectories.size(); i++) {
+            ProblemMetadata metadata = new ProblemMetadata(session, StubPolygonSession.problem(), Runnable::run);
+            blackhole.consume(generator.generate(session.getInfo(), metadata, i + 1, Fixtures.shortName(i + 1),
+                    List.of("check.cpp", "solution.cpp"), problemDirectories.get(i)));
+        }
+    }
+}
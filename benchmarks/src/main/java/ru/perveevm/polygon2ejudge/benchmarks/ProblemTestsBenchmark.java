@@ -0,0 +1,42 @@
+package ru.perveevm.polygon2ejudge.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.perveevm.polygon2ejudge.ProblemTests;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProblemTestsBenchmark {
+    @Param({"10", "1000", "50000"})
+    public int tests;
+
+    private Path problemXmlPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        problemXmlPath = Files.createTempFile("problem", ".xml");
+        Files.writeString(problemXmlPath, Fixtures.problemXml(tests, Math.min(tests, 10)));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(problemXmlPath);
+    }
+
+    @Benchmark
+    public ProblemTests read() throws IOException, XMLStreamException {
+        return ProblemTests.read(problemXmlPath);
+    }
+}
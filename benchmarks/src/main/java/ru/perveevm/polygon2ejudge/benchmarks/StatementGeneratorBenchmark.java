@@ -0,0 +1,35 @@
+package ru.perveevm.polygon2ejudge.benchmarks;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import ru.perveevm.polygon2ejudge.StatementGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of a Polygon HTML statement together with its conversion to the statement.xml fragment.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementGeneratorBenchmark {
+    @Param({"10", "100", "1000"})
+    public int paragraphs;
+
+    private String html;
+
+    @Setup
+    public void setUp() {
+        html = Fixtures.statementHtml(paragraphs);
+    }
+
+    @Benchmark
+    public String convert() {
+        return StatementGenerator.convert(Jsoup.parse(html));
+    }
+}
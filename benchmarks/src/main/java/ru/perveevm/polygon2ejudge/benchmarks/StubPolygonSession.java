@@ -0,0 +1,78 @@
+package ru.perveevm.polygon2ejudge.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import ru.perveevm.polygon.api.PolygonSession;
+import ru.perveevm.polygon.api.entities.Problem;
+import ru.perveevm.polygon.api.entities.ProblemInfo;
+import ru.perveevm.polygon.api.entities.Statement;
+import ru.perveevm.polygon.api.entities.TestGroup;
+
+import java.util.Map;
+
+/**
+ * Polygon session answering from memory, so benchmarks never touch the network. Entities are built from the same
+ * JSON the Polygon API returns.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class StubPolygonSession extends PolygonSession {
+    private static final Gson GSON = new Gson();
+
+    private final ProblemInfo info;
+    private final Map<String, Statement> statements;
+    private final TestGroup[] testGroups;
+
+    public StubPolygonSession(final String statementsLang, final int groups) {
+        super("benchmark", "benchmark");
+
+        info = GSON.fromJson("""
+                {"inputFile": "stdin", "outputFile": "stdout", "interactive": false,
+                 "timeLimit": 2000, "memoryLimit": 256}
+                """, ProblemInfo.class);
+        statements = Map.of(statementsLang, GSON.fromJson("""
+                {"encoding": "UTF-8", "name": "Benchmark", "legend": "", "input": "", "output": ""}
+                """, Statement.class));
+
+        testGroups = new TestGroup[groups];
+        for (int i = 0; i < groups; i++) {
+            JsonObject group = new JsonObject();
+            group.addProperty("name", String.valueOf(i));
+            group.addProperty("pointsPolicy", i == 0 ? "EACH_TEST" : "COMPLETE_GROUP");
+            group.addProperty("feedbackPolicy", i == 0 ? "COMPLETE" : "ICPC");
+            JsonArray dependencies = new JsonArray();
+            if (i > 0) {
+                dependencies.add(String.valueOf(i - 1));
+            }
+            group.add("dependencies", dependencies);
+            testGroups[i] = GSON.fromJson(group, TestGroup.class);
+        }
+    }
+
+    public static Problem problem() {
+        return GSON.fromJson("""
+                {"id": 100001, "owner": "benchmark", "name": "bench", "deleted": false, "favourite": false,
+                 "accessType": "OWNER", "revision": 42, "latestPackage": 42, "modified": false}
+                """, Problem.class);
+    }
+
+    public ProblemInfo getInfo() {
+        return info;
+    }
+
+    @Override
+    public ProblemInfo problemInfo(final Integer problemId) {
+        return info;
+    }
+
+    @Override
+    public Map<String, Statement> problemStatements(final Integer problemId) {
+        return statements;
+    }
+
+    @Override
+    public TestGroup[] problemViewTestGroup(final Integer problemId, final String testset, final String group) {
+        return testGroups;
+    }
+}
@@ -0,0 +1,179 @@
+package ru.perveevm.polygon2ejudge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of files keyed by SHA-256. Files are materialized as hard links to the stored blobs,
+ * falling back to reflinks and plain copies when hard links are not possible. A blob that is no longer linked
+ * from anywhere else has a link count of one and is removed by {@link #collectGarbage()}. Blobs stored while the
+ * collection runs are kept, and a blob collected between being looked up and being linked is stored again.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class BlobStore {
+    private final Logger log = Logger.getLogger(BlobStore.class.getName());
+
+    private final Path directory;
+
+    public BlobStore(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Replaces {@code file} with a link to the blob with the same content.
+     */
+    public void deduplicate(final Path file) throws IOException {
+        try {
+            tryDeduplicate(file);
+        } catch (NoSuchFileException e) {
+            tryDeduplicate(file);
+        }
+    }
+
+    /**
+     * Creates {@code target} as a link to the blob with the content of {@code source}. The source is not changed.
+     */
+    public void materialize(final Path source, final Path target) throws IOException {
+        try {
+            link(store(source, true), target);
+        } catch (NoSuchFileException e) {
+            link(store(source, true), target);
+        }
+    }
+
+    /**
+     * Deletes blobs that are not linked from anywhere and returns the number of freed bytes.
+     */
+    public long collectGarbage() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+
+        FileTime start = FileTime.from(Instant.now());
+        List<Path> blobs;
+        try (Stream<Path> files = Files.walk(directory)) {
+            blobs = files.filter(Files::isRegularFile).toList();
+        }
+
+        long freed = 0;
+        for (Path blob : blobs) {
+            // Storing or linking a blob changes its ctime, so a newer blob may be about to get its first link
+            Map<String, Object> attributes = Files.readAttributes(blob, "unix:nlink,ctime,size");
+            if ((Integer) attributes.get("nlink") == 1 && ((FileTime) attributes.get("ctime")).compareTo(start) < 0
+                    && Files.deleteIfExists(blob)) {
+                freed += (Long) attributes.get("size");
+            }
+        }
+        return freed;
+    }
+
+    private void tryDeduplicate(final Path file) throws IOException {
+        Path blob = store(file, false);
+        if (!Files.isSameFile(blob, file)) {
+            link(blob, file);
+        }
+    }
+
+    private Path store(final Path file, final boolean keepSource) throws IOException {
+        String hash = hash(file);
+        Path blob = directory.resolve(hash.substring(0, 2)).resolve(hash);
+        if (Files.exists(blob)) {
+            return blob;
+        }
+
+        Files.createDirectories(blob.getParent());
+        if (!keepSource) {
+            try {
+                Files.createLink(blob, file);
+                return blob;
+            } catch (FileAlreadyExistsException e) {
+                return blob;
+            } catch (IOException | UnsupportedOperationException e) {
+                log.fine(String.format("Could not link %s into blob store (%s)", file, e.getMessage()));
+            }
+        }
+
+        Path tmpBlob = Files.createTempFile(blob.getParent(), hash, ".tmp");
+        try {
+            Files.copy(file, tmpBlob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(tmpBlob, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpBlob);
+        }
+        return blob;
+    }
+
+    private void link(final Path blob, final Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path tmpTarget = target.resolveSibling(target.getFileName() + ".link");
+        Files.deleteIfExists(tmpTarget);
+        try {
+            try {
+                Files.createLink(tmpTarget, blob);
+            } catch (IOException | UnsupportedOperationException e) {
+                if (!reflink(blob, tmpTarget)) {
+                    Files.copy(blob, tmpTarget, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+            Files.move(tmpTarget, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpTarget);
+        }
+    }
+
+    private boolean reflink(final Path source, final Path target) {
+        try {
+            Process process = new ProcessBuilder("cp", "--reflink=always", "--preserve=mode",
+                    source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException ignored) {
+        }
+        return false;
+    }
+
+    private static String hash(final Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
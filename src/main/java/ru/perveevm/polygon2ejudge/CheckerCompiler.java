@@ -0,0 +1,329 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Compiles checkers and interactors at import time, so that ejudge finds ready binaries and a broken checker fails
+ * the import instead of the first run. Binaries are cached by SHA-256 of the source, the headers next to it, the
+ * compile command and the size and modification time of the compiler, and are linked into problem directories. All
+ * sources of a problem are compiled at the same time, and a source compiled by another import thread is awaited
+ * instead of being compiled again.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class CheckerCompiler {
+    private static final long COMPILE_TIMEOUT_SECONDS = 120;
+    private static final int MAX_OUTPUT_LENGTH = 4096;
+
+    private final Logger log = Logger.getLogger(CheckerCompiler.class.getName());
+
+    private final Path cacheDirectory;
+    private final Map<String, List<String>> commands = new HashMap<>();
+    private final Map<String, CompletableFuture<Path>> compilations = new ConcurrentHashMap<>();
+
+    /**
+     * @param commands compile commands by source extension, {@code {source}} and {@code {output}} are replaced with
+     *                 the source file name and the binary path. Arguments are separated by whitespace and may be
+     *                 quoted with single or double quotes
+     */
+    public CheckerCompiler(final Path cacheDirectory, final Map<String, String> commands) {
+        this.cacheDirectory = cacheDirectory;
+        commands.forEach((extension, command) -> this.commands.put(extension, splitCommand(command)));
+    }
+
+    public boolean isEnabled() {
+        return !commands.isEmpty();
+    }
+
+    /**
+     * Compiles the sources located in {@code problemDirectory} into binaries named after them without extension.
+     * Sources without a configured compile command are left for ejudge. Returns the number of compiled sources.
+     */
+    public int compile(final Path problemDirectory, final List<String> sources)
+            throws IOException, ContestManagerException {
+        List<String> compiledSources = new ArrayList<>();
+        List<CompletableFuture<Path>> binaries = new ArrayList<>();
+        List<Compilation> started = new ArrayList<>();
+        try {
+            for (String source : sources) {
+                List<String> command = commands.get(source.substring(source.lastIndexOf('.') + 1));
+                if (command == null) {
+                    continue;
+                }
+
+                String key = getKey(problemDirectory, source, command);
+                Path binary = cacheDirectory.resolve(key.substring(0, 2)).resolve(key);
+                CompletableFuture<Path> result = new CompletableFuture<>();
+                CompletableFuture<Path> existing = compilations.putIfAbsent(key, result);
+                if (existing != null) {
+                    result = existing;
+                } else if (Files.exists(binary)) {
+                    result.complete(binary);
+                    compilations.remove(key);
+                } else {
+                    try {
+                        started.add(start(problemDirectory, source, command, key, binary, result));
+                    } catch (IOException | RuntimeException e) {
+                        compilations.remove(key);
+                        result.completeExceptionally(e);
+                    }
+                }
+                compiledSources.add(source);
+                binaries.add(result);
+            }
+        } finally {
+            // Started compilations are registered in compilations and awaited by other threads, so they are
+            // finished even if hashing or starting a later source fails.
+            for (Compilation compilation : started) {
+                finish(compilation);
+            }
+        }
+
+        for (int i = 0; i < compiledSources.size(); i++) {
+            String source = compiledSources.get(i);
+            Path binary;
+            try {
+                binary = binaries.get(i).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ContestManagerException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+            link(binary, problemDirectory.resolve(source.substring(0, source.lastIndexOf('.'))));
+        }
+        return compiledSources.size();
+    }
+
+    /**
+     * Deletes binaries that are not linked from any problem and returns the number of freed bytes. Binaries compiled
+     * while the collection runs are kept, as they may not be linked yet.
+     */
+    public long collectGarbage() throws IOException {
+        if (!Files.isDirectory(cacheDirectory)) {
+            return 0;
+        }
+
+        FileTime start = FileTime.from(Instant.now());
+        List<Path> binaries;
+        try (Stream<Path> files = Files.walk(cacheDirectory)) {
+            binaries = files.filter(Files::isRegularFile).toList();
+        }
+
+        long freed = 0;
+        for (Path binary : binaries) {
+            Map<String, Object> attributes = Files.readAttributes(binary, "unix:nlink,ctime,size");
+            if ((Integer) attributes.get("nlink") == 1 && ((FileTime) attributes.get("ctime")).compareTo(start) < 0
+                    && Files.deleteIfExists(binary)) {
+                freed += (Long) attributes.get("size");
+            }
+        }
+        return freed;
+    }
+
+    private Compilation start(final Path problemDirectory, final String source, final List<String> command,
+                              final String key, final Path binary, final CompletableFuture<Path> result)
+            throws IOException {
+        Files.createDirectories(binary.getParent());
+        Path tmpBinary = binary.resolveSibling(key + ".tmp");
+        Path output = binary.resolveSibling(key + ".log");
+        List<String> arguments = new ArrayList<>();
+        for (String argument : command) {
+            arguments.add(argument.replace("{source}", source).replace("{output}", tmpBinary.toAbsolutePath()
+                    .toString()));
+        }
+
+        log.info(String.format("Compiling %s: %s", problemDirectory.resolve(source), String.join(" ", arguments)));
+        Process process = new ProcessBuilder(arguments)
+                .directory(problemDirectory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile())
+                .start();
+        return new Compilation(problemDirectory.resolve(source), key, binary, tmpBinary, output, process, result);
+    }
+
+    private void finish(final Compilation compilation) {
+        try {
+            if (!compilation.process().waitFor(COMPILE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                compilation.process().destroyForcibly();
+                throw new ContestManagerException(String.format("compilation of %s timed out",
+                        compilation.source()));
+            }
+            if (compilation.process().exitValue() != 0 || !Files.exists(compilation.tmpBinary())) {
+                String output = new String(Files.readAllBytes(compilation.output()), StandardCharsets.UTF_8);
+                if (output.length() > MAX_OUTPUT_LENGTH) {
+                    output = output.substring(0, MAX_OUTPUT_LENGTH) + "...";
+                }
+                throw new ContestManagerException(String.format("failed to compile %s:%n%s", compilation.source(),
+                        output));
+            }
+            Files.move(compilation.tmpBinary(), compilation.binary(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            compilation.result().complete(compilation.binary());
+        } catch (IOException | ContestManagerException e) {
+            compilation.result().completeExceptionally(e);
+        } catch (InterruptedException e) {
+            compilation.process().destroyForcibly();
+            Thread.currentThread().interrupt();
+            compilation.result().completeExceptionally(new ContestManagerException("compilation was interrupted",
+                    e));
+        } finally {
+            compilations.remove(compilation.key());
+            try {
+                Files.deleteIfExists(compilation.tmpBinary());
+                Files.deleteIfExists(compilation.output());
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void link(final Path binary, final Path target) throws IOException {
+        Path tmpTarget = target.resolveSibling(target.getFileName() + ".link");
+        Files.deleteIfExists(tmpTarget);
+        try {
+            try {
+                Files.createLink(tmpTarget, binary);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(binary, tmpTarget, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            Files.move(tmpTarget, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpTarget);
+        }
+    }
+
+    private static String getKey(final Path problemDirectory, final String source, final List<String> command)
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        for (String argument : command) {
+            digest.update(argument.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update(getCompilerIdentity(command.get(0)).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Files.readAllBytes(problemDirectory.resolve(source)));
+
+        List<Path> headers;
+        try (Stream<Path> files = Files.list(problemDirectory)) {
+            headers = files.filter(path -> path.getFileName().toString().endsWith(".h"))
+                    .sorted()
+                    .toList();
+        }
+        for (Path header : headers) {
+            digest.update((byte) 0);
+            digest.update(header.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(header));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Identifies the installed compiler by the size and modification time of its executable, so that binaries are
+     * rebuilt after the compiler is upgraded.
+     */
+    private static String getCompilerIdentity(final String compiler) throws IOException {
+        Path executable = null;
+        if (compiler.contains(File.separator)) {
+            executable = Path.of(compiler);
+        } else {
+            for (String directory : System.getenv().getOrDefault("PATH", "").split(File.pathSeparator)) {
+                Path candidate = Path.of(directory.isEmpty() ? "." : directory).resolve(compiler);
+                if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                    executable = candidate;
+                    break;
+                }
+            }
+        }
+        if (executable == null || !Files.exists(executable)) {
+            return compiler;
+        }
+
+        Path realExecutable = executable.toRealPath();
+        return String.format("%s %d %d", realExecutable, Files.size(realExecutable),
+                Files.getLastModifiedTime(realExecutable).toMillis());
+    }
+
+    /**
+     * Splits the command into arguments at whitespace outside of quotes. Single quotes keep everything literally,
+     * inside double quotes and outside of quotes a backslash escapes the next character.
+     */
+    static List<String> splitCommand(final String command) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '\\' && i + 1 < command.length()) {
+                argument.append(command.charAt(++i));
+                inArgument = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(c);
+                inArgument = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException(String.format("unterminated quote in command %s", command));
+        }
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+        return arguments;
+    }
+
+    private record Compilation(Path source, String key, Path binary, Path tmpBinary, Path output, Process process,
+                               CompletableFuture<Path> result) {
+    }
+}
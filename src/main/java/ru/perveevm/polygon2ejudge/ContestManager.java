@@ -1,38 +1,32 @@
 package ru.perveevm.polygon2ejudge;
 
-import net.lingala.zip4j.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.RandomStringUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Entities;
-import org.jsoup.select.Elements;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 import ru.perveevm.polygon.api.PolygonSession;
 import ru.perveevm.polygon.api.entities.*;
 import ru.perveevm.polygon.api.entities.enums.PackageState;
 import ru.perveevm.polygon.api.entities.enums.SolutionTag;
-import ru.perveevm.polygon.api.entities.enums.TestGroupFeedbackPolicy;
-import ru.perveevm.polygon.api.entities.enums.TestGroupPointsPolicy;
 import ru.perveevm.polygon.exceptions.api.PolygonSessionException;
 import ru.perveevm.polygon.exceptions.user.PolygonUserSessionException;
 import ru.perveevm.polygon.user.PolygonUserSession;
 import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
 import ru.perveevm.polygon2ejudge.exceptions.EjudgeSessionException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -41,7 +35,7 @@ import java.util.stream.Stream;
 /**
  * @author Mike Perveev (perveev_m@mail.ru)
  */
-public class ContestManager {
+public class ContestManager implements Closeable {
     private final Logger log;
     private final PolygonSession session;
     private final PolygonUserSession userSession;
@@ -49,8 +43,24 @@ public class ContestManager {
     private final Path contestsDir;
     private final String statementsLang;
     private final Path statementsDir;
-    private final Path gvaluerPath;
     private final String statementsUrlPrefix;
+    private final int importThreads;
+    private final PackageCache packageCache;
+    private final BlobStore blobStore;
+    private final PackageDownloader packageDownloader;
+    private final ProblemConfigGenerator configGenerator;
+    private final StatementGenerator statementGenerator;
+    private final CheckerCompiler checkerCompiler;
+    private final ExecutorService apiExecutor;
+    private final int submitThreads;
+    private final double submitRate;
+    private final int submitRetries;
+    private final int verdictBatchSize;
+    private final long verdictTimeout;
+    private final Path metricsDir;
+    private final long packageBuildTimeout;
+    private volatile Metrics metrics = new Metrics();
+    private EjudgeSession ejudgeSession;
 
     public ContestManager() throws ContestManagerException {
         try (InputStream in = ContestManager.class.getClassLoader().getResourceAsStream("logging.properties")) {
@@ -71,469 +81,796 @@ public class ContestManager {
             contestsDir = Path.of(properties.getProperty("ejudge.contestsDir"));
             statementsLang = properties.getProperty("ejudge.statementsLang");
             statementsDir = Path.of(properties.getProperty("ejudge.statementsDir"));
-            gvaluerPath = Path.of(properties.getProperty("ejudge.gvaluerPath"));
             statementsUrlPrefix = properties.getProperty("ejudge.statementsUrlPrefix");
-        } catch (IOException e) {
+            importThreads = Math.max(1, Integer.parseInt(properties.getProperty("ejudge.importThreads", "4")));
+            String packageCacheDirValue = properties.getProperty("polygon.packageCacheDir", "");
+            packageCache = new PackageCache(packageCacheDirValue.isBlank()
+                    ? contestsDir.resolve(".polygon2ejudge").resolve("packages")
+                    : Path.of(packageCacheDirValue),
+                    Long.parseLong(properties.getProperty("polygon.packageCacheSize", "4096")) * 1024 * 1024);
+            packageDownloader = new PackageDownloader(
+                    properties.getProperty("polygon.apiUrl", "https://polygon.codeforces.com/api/"),
+                    properties.getProperty("polygon.key"), properties.getProperty("polygon.secret"),
+                    Integer.parseInt(properties.getProperty("polygon.downloadRetries", "5")), 1000);
+            blobStore = Boolean.parseBoolean(properties.getProperty("ejudge.deduplicate", "false"))
+                    ? new BlobStore(contestsDir.resolve(".polygon2ejudge").resolve("blobs"))
+                    : null;
+            configGenerator = new ProblemConfigGenerator(statementsLang,
+                    Path.of(properties.getProperty("ejudge.gvaluerPath")), blobStore);
+            statementGenerator = new StatementGenerator(statementsLang);
+            Map<String, String> compileCommands = new HashMap<>();
+            for (String name : properties.stringPropertyNames()) {
+                String command = properties.getProperty(name);
+                if (name.startsWith("ejudge.compile.") && !command.isBlank()) {
+                    compileCommands.put(name.substring("ejudge.compile.".length()), command);
+                }
+            }
+            checkerCompiler = new CheckerCompiler(contestsDir.resolve(".polygon2ejudge").resolve("binaries"),
+                    compileCommands);
+            apiExecutor = Executors.newFixedThreadPool(
+                    Math.max(1, Integer.parseInt(properties.getProperty("polygon.apiThreads", "8"))), runnable -> {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            submitThreads = Math.max(1, Integer.parseInt(properties.getProperty("ejudge.submitThreads", "4")));
+            submitRate = Double.parseDouble(properties.getProperty("ejudge.submitRate", "2"));
+            submitRetries = Integer.parseInt(properties.getProperty("ejudge.submitRetries", "3"));
+            verdictBatchSize = Math.max(1, Integer.parseInt(properties.getProperty("ejudge.verdictBatchSize", "100")));
+            verdictTimeout = Long.parseLong(properties.getProperty("ejudge.verdictTimeout", "3600"));
+            String metricsDirValue = properties.getProperty("metrics.dir", "");
+            if (!Boolean.parseBoolean(properties.getProperty("metrics.enabled", "true"))) {
+                metricsDir = null;
+            } else if (metricsDirValue.isBlank()) {
+                metricsDir = contestsDir.resolve(".polygon2ejudge").resolve("metrics");
+            } else {
+                metricsDir = Path.of(metricsDirValue);
+            }
+            packageBuildTimeout = Long.parseLong(properties.getProperty("polygon.packageBuildTimeout", "1800"));
+        } catch (IOException | IllegalArgumentException e) {
             throw new ContestManagerException("failed to load properties", e);
         }
     }
 
-    private List<String> moveFiles(final Path tmpDir, final Path problemDirectory, final Problem problem,
-                                   final ProblemInfo problemInfo)
+    private List<String> extractFiles(final Path packagePath, final Path tmpDir, final Path problemDirectory,
+                                      final ProblemMetadata metadata, final ProblemInfo problemInfo)
             throws IOException, PolygonSessionException, ContestManagerException {
+        Problem problem = metadata.getProblem();
         List<String> names = new ArrayList<>();
+        String statementsPrefix = "statements/.html/" + statementsLang + "/";
 
-        log.info("Moving tests...");
-        Files.move(tmpDir.resolve("tests"), problemDirectory.resolve("tests"));
+        try (PackageExtractor extractor = new PackageExtractor(packagePath)) {
+            extractor.addFile("problem.xml", tmpDir.resolve("problem.xml"));
+            extractor.addDirectory("tests", problemDirectory.resolve("tests"), name -> true);
+            extractor.addDirectory("solutions", problemDirectory.resolve("solutions"), name -> true);
 
-        log.info("Moving solutions...");
-        Files.move(tmpDir.resolve("solutions"), problemDirectory.resolve("solutions"));
+            String checkerName = metadata.getChecker();
+            if (!extractor.contains("files/" + checkerName)) {
+                checkerName = "check.cpp";
+            }
+            extractor.addFile("files/" + checkerName, problemDirectory.resolve(checkerName));
+            names.add(checkerName);
+
+            ProblemFiles files = metadata.getFiles();
+            for (ProblemFile file : files.getResourceFiles()) {
+                String extension = file.getName().split("\\.")[1];
+                if (extension.equals("sty") || extension.equals("tex") || extension.equals("ftl")) {
+                    continue;
+                }
+                extractor.addFile("files/" + file.getName(), problemDirectory.resolve(file.getName()));
+            }
+
+            Solution[] solutions = metadata.getSolutions();
+            Optional<Solution> mainSolution = Arrays.stream(solutions)
+                    .filter(s -> s.getTag() == SolutionTag.MA)
+                    .findAny();
+            if (mainSolution.isEmpty()) {
+                throw new ContestManagerException("there is no Main correct solution");
+            }
+            extractor.addFile("solutions/" + mainSolution.get().getName(),
+                    problemDirectory.resolve(mainSolution.get().getName()));
+            names.add(mainSolution.get().getName());
+
+            if (problemInfo.getInteractive()) {
+                String interactor = metadata.getInteractor();
+                extractor.addFile("files/" + interactor, problemDirectory.resolve(interactor));
+                names.add(interactor);
+            }
 
-        log.info("Moving checker...");
-        String polygonCheckerName = session.problemChecker(problem.getId());
-        Path checkerPath = tmpDir.resolve("files").resolve(polygonCheckerName);
-        if (!Files.exists(checkerPath)) {
-            checkerPath = tmpDir.resolve("files").resolve("check.cpp");
+            extractor.addDirectory(statementsPrefix, tmpDir.resolve("statements"), name -> name.equals("problem.html"));
+            extractor.addDirectory(statementsPrefix, problemDirectory.resolve("attachments"),
+                    name -> !name.contains("/") && !name.endsWith(".html") && !name.endsWith(".css"));
+            Files.createDirectory(problemDirectory.resolve("attachments"));
+
+            log.info(String.format("%s: extracting archive...", problem.getName()));
+            Metrics.Timer timer = metrics.start(Metrics.Phase.EXTRACTION);
+            int count = extractor.extract();
+            timer.stop(extractor.getExtractedBytes(), count);
+            log.info(String.format("%s: extracted %d files (%d bytes)", problem.getName(), count,
+                    extractor.getExtractedBytes()));
         }
-        Files.move(checkerPath, problemDirectory.resolve(checkerPath.getFileName()));
-        names.add(checkerPath.getFileName().toString());
 
-        log.info("Moving resource files...");
-        ProblemFiles files = session.problemFiles(problem.getId());
-        for (ProblemFile file : files.getResourceFiles()) {
-            String extension = file.getName().split("\\.")[1];
-            if (extension.equals("sty") || extension.equals("tex") || extension.equals("ftl")) {
-                continue;
-            }
-            Files.move(tmpDir.resolve("files").resolve(file.getName()), problemDirectory.resolve(file.getName()));
+        return names;
+    }
+
+    private void deduplicateFiles(final Path problemDirectory, final Problem problem) throws IOException {
+        log.info(String.format("%s: deduplicating tests and resources...", problem.getName()));
+        List<Path> files;
+        try (Stream<Path> tests = Files.walk(problemDirectory.resolve("tests"));
+             Stream<Path> resources = Files.list(problemDirectory)) {
+            files = Stream.concat(tests, resources).filter(Files::isRegularFile).toList();
+        }
+        Metrics.Timer timer = metrics.start(Metrics.Phase.MOVES);
+        long bytes = 0;
+        for (Path file : files) {
+            bytes += Files.size(file);
+            blobStore.deduplicate(file);
         }
+        timer.stop(bytes, files.size());
+    }
 
-        log.info("Moving main correct solution...");
-        Solution[] solutions = session.problemSolutions(problem.getId());
-        Optional<Solution> mainSolution = Arrays.stream(solutions).filter(s -> s.getTag() == SolutionTag.MA).findAny();
-        if (mainSolution.isEmpty()) {
-            throw new ContestManagerException("there is no Main correct solution");
+    private ProblemPackage getLatestPackage(final ProblemMetadata metadata)
+            throws PolygonSessionException, ContestManagerException {
+        ProblemPackage[] packages = metadata.getPackages();
+        Optional<ProblemPackage> lastPackage = Arrays.stream(packages)
+                .filter(p -> p.getState() == PackageState.READY)
+                .max(Comparator.comparingInt(ProblemPackage::getId));
+        if (lastPackage.isEmpty()) {
+            throw new ContestManagerException("there is no generated READY package");
         }
-        Files.copy(problemDirectory.resolve("solutions").resolve(mainSolution.get().getName()),
-                problemDirectory.resolve(mainSolution.get().getName()));
-        names.add(mainSolution.get().getName());
+        return lastPackage.get();
+    }
 
-        if (problemInfo.getInteractive()) {
-            log.info("Moving interactor...");
-            String interactor = session.problemInteractor(problem.getId());
-            Files.move(tmpDir.resolve("files").resolve(interactor), problemDirectory.resolve(interactor));
-            names.add(interactor);
+    private String importProblem(final ProblemMetadata metadata, final Path problemDirectory,
+                                 final int ejudgeProblemId, final String problemShortName, final String statementsUrl)
+            throws PolygonSessionException, IOException, ContestManagerException {
+        Problem problem = metadata.getProblem();
+        log.info(String.format("Importing problem %s to %s", problem.getName(), problemDirectory));
+
+        Path tmpDir = problemDirectory.resolve("tmp");
+        Files.createDirectory(problemDirectory);
+        Files.createDirectory(tmpDir);
+
+        ProblemInfo problemInfo = metadata.getInfo();
+        ProblemPackage problemPackage = getLatestPackage(metadata);
+        int packageId = problemPackage.getId();
+        Path packagePath = packageCache.get(problem.getId(), packageId, path -> {
+            log.info(String.format("%s: downloading package #%d", problem.getName(), packageId));
+            long resumedBytes = Files.exists(path) ? Files.size(path) : 0;
+            Metrics.Timer timer = metrics.start(Metrics.Phase.DOWNLOAD);
+            packageDownloader.download(problem.getId(), packageId, path);
+            timer.stop(Math.max(0, Files.size(path) - resumedBytes), 1);
+        });
+
+        List<String> fileNames;
+        try {
+            fileNames = extractFiles(packagePath, tmpDir, problemDirectory, metadata, problemInfo);
+        } finally {
+            packageCache.release(packagePath);
+        }
+        if (blobStore != null) {
+            deduplicateFiles(problemDirectory, problem);
+        }
+        if (checkerCompiler.isEnabled()) {
+            List<String> programs = new ArrayList<>();
+            programs.add(fileNames.get(0));
+            if (fileNames.size() == 3) {
+                programs.add(fileNames.get(2));
+            }
+            log.info(String.format("%s: compiling checker...", problem.getName()));
+            Metrics.Timer compileTimer = metrics.start(Metrics.Phase.COMPILATION);
+            int compiled = checkerCompiler.compile(problemDirectory, programs);
+            compileTimer.stop(0, compiled);
         }
 
-        return names;
-    }
+        Metrics.Timer configTimer = metrics.start(Metrics.Phase.CONFIG);
+        String configString = configGenerator.generate(problemInfo, metadata, ejudgeProblemId, problemShortName,
+                fileNames, problemDirectory);
+        configTimer.stop(configString.length(), 1);
+
+        Metrics.Timer statementTimer = metrics.start(Metrics.Phase.STATEMENT);
+        statementGenerator.generate(tmpDir, problem, problemDirectory, statementsUrl);
+        statementTimer.stop(Files.size(problemDirectory.resolve("statement.xml")), 1);
 
-    private String removeExtension(final String name) {
-        return name.substring(0, name.lastIndexOf('.'));
+        log.info(String.format("%s: cleaning up...", problem.getName()));
+        FileUtils.deleteDirectory(tmpDir.toFile());
+        new ProblemManifest(problem.getId(), packageId, problemPackage.getRevision()).write(problemDirectory);
+
+        return configString;
     }
 
-    private List<TestInformation> getTests(final Path tmpDirectory)
-            throws ParserConfigurationException, IOException, SAXException {
-        Path configPath = tmpDirectory.resolve("problem.xml");
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        org.w3c.dom.Document document = builder.parse(configPath.toFile());
-        document.getDocumentElement().normalize();
+    private String getStatementsFile(final int ejudgeContestId) {
+        Random random = new Random(ejudgeContestId);
+        return "contest-" + ejudgeContestId + "-" +
+                RandomStringUtils.random(8, 'a', 'z', true, false, null, random) + ".pdf";
+    }
 
-        log.info("Parsing tests...");
-        org.w3c.dom.Element testsElement = (org.w3c.dom.Element) document.getElementsByTagName("tests").item(0);
-        List<TestInformation> tests = new ArrayList<>();
-        NodeList allTestsElement = testsElement.getElementsByTagName("test");
-        for (int i = 0; i < allTestsElement.getLength(); i++) {
-            org.w3c.dom.Element testElement = (org.w3c.dom.Element) allTestsElement.item(i);
-            TestInformation test = new TestInformation();
-            if (testElement.hasAttribute("points")) {
-                test.setPoints(Double.parseDouble(testElement.getAttribute("points")));
-            }
-            if (testElement.hasAttribute("group")) {
-                test.setGroup(testElement.getAttribute("group"));
-            }
-            test.setUseInSamples(testElement.hasAttribute("sample") &&
-                    testElement.getAttribute("sample").equals("true"));
-            tests.add(test);
+    private Map<String, Problem> loadContestProblems(final int polygonContestId) throws ContestManagerException {
+        try {
+            Map<String, Problem> problems = session.contestProblems(polygonContestId);
+            log.info(String.format("Problems list loaded, found %d problems: %s",
+                    problems.size(),
+                    problems.values().stream()
+                            .map(Problem::getName)
+                            .collect(Collectors.joining(System.lineSeparator() + "\t",
+                                    System.lineSeparator() + "\t", ""))));
+            return problems;
+        } catch (PolygonSessionException e) {
+            throw new ContestManagerException("failed to load problems list", e);
         }
-        return tests;
     }
 
-    private String generateProblemConfig(final ProblemInfo problemInfo, final Problem problem,
-                                         final int ejudgeProblemId, final String problemShortName,
-                                         final List<String> fileNames, final Path problemDirectory)
-            throws PolygonSessionException, ContestManagerException {
-        int timeLimit = problemInfo.getTimeLimit();
-        int memoryLimit = problemInfo.getMemoryLimit();
-        List<TestInformation> tests;
+    /**
+     * Downloads PDF statements of the contest to a temporary file and atomically moves it into every given file of the
+     * statements directory, so a statements file is never seen half-written.
+     */
+    private void downloadStatements(final int polygonContestId, final List<String> statementsFiles)
+            throws ContestManagerException {
+        log.info("Downloading PDF statements...");
+        Metrics.Timer timer = metrics.start(Metrics.Phase.DOWNLOAD);
+        Path tmpFile = null;
         try {
-            tests = getTests(problemDirectory.resolve("tmp"));
-        } catch (ParserConfigurationException | IOException | SAXException e) {
-            throw new ContestManagerException("could not parse problem.xml");
-        }
-
-        Map<String, Statement> statements = session.problemStatements(problem.getId());
-        boolean pointsEnabled = false;
-        boolean groupsEnabled = false;
-        int totalScore = 0;
-        for (TestInformation test : tests) {
-            if (test.getPoints() != null) {
-                pointsEnabled = true;
-                totalScore += test.getPoints();
-            }
-            if (test.getGroup() != null) {
-                groupsEnabled = true;
-            }
-        }
-        String title = "Undefined";
-        if (statements.containsKey(statementsLang)) {
-            title = statements.get(statementsLang).getName();
-        } else {
-            log.warning(String.format("There is no statements in %s", statementsLang));
-        }
-
-        log.info("Generating problem config...");
-        Map<String, String> config = new LinkedHashMap<>();
-        config.put("id", String.valueOf(ejudgeProblemId));
-        config.put("short_name", "\"" + problemShortName + "\"");
-        config.put("long_name", "\"" + title + "\"");
-        config.put("internal_name", "\"" + problem.getName() + "\"");
-        config.put("extid", "\"polygon:" + problem.getId() + "\"");
-        config.put("use_stdin", "");
-        config.put("use_stdout", "");
-        config.put("xml_file", "\"statement.xml\"");
-        config.put("test_pat", "\"%02d\"");
-        config.put("use_corr", "");
-        config.put("corr_pat", "\"%02d.a\"");
-        if (timeLimit % 1000 == 0) {
-            config.put("time_limit", String.valueOf(timeLimit / 1000));
-        } else {
-            config.put("time_limit_millis", String.valueOf(timeLimit));
-        }
-        config.put("real_time_limit", String.valueOf((2 * timeLimit + 999) / 1000));
-        config.put("max_vm_size", memoryLimit + "M");
-        config.put("max_stack_size", memoryLimit + "M");
-        if (pointsEnabled) {
-            int lastSample = 0;
-            for (TestInformation test : tests) {
-                if (test.getUseInStatements()) {
-                    lastSample++;
-                } else {
-                    break;
+            tmpFile = Files.createTempFile(statementsDir, ".statements", ".pdf.tmp");
+            Files.delete(tmpFile);
+            userSession.contestGetStatementsFromPackages(polygonContestId, tmpFile);
+            timer.stop(Files.size(tmpFile), 1);
+
+            for (String statementsFile : statementsFiles.subList(1, statementsFiles.size())) {
+                Path tmpCopy = Files.createTempFile(statementsDir, ".statements", ".pdf.tmp");
+                try {
+                    Files.copy(tmpFile, tmpCopy, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(tmpCopy, statementsDir.resolve(statementsFile), StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmpCopy);
                 }
             }
-            config.put("full_score", String.valueOf(totalScore));
-            config.put("full_user_score", String.valueOf(totalScore));
-            config.put("run_penalty", "0");
-            config.put("test_score_list", tests.stream()
-                    .map(TestInformation::getPoints)
-                    .map(Double::intValue)
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(" ", "\"", "\"")));
-            if (lastSample == 0) {
-                config.put("open_tests", String.format("\"1-%d:brief\"", tests.size()));
-            } else {
-                config.put("open_tests",
-                        String.format("\"1-%d:full,%d-%d:brief\"", lastSample, lastSample + 1, tests.size()));
-            }
-            config.put("final_open_tests", String.format("\"1-%d:full\"", tests.size()));
-        }
-        if (groupsEnabled) {
-            log.info("Generating valuer.cfg...");
-            TestGroup[] groups = session.problemViewTestGroup(problem.getId(), "tests", null);
-            Map<String, List<Integer>> groupTests = new HashMap<>();
-            for (int i = 0; i < tests.size(); i++) {
-                if (!groupTests.containsKey(tests.get(i).getGroup())) {
-                    groupTests.put(tests.get(i).getGroup(), new ArrayList<>());
+            Files.move(tmpFile, statementsDir.resolve(statementsFiles.get(0)), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            log.info("PDF statements are downloaded");
+        } catch (PolygonUserSessionException | IOException e) {
+            throw new ContestManagerException("failed to download pdf statements", e);
+        } finally {
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException ignored) {
                 }
-                groupTests.get(tests.get(i).getGroup()).add(i);
             }
+        }
+    }
 
-            StringBuilder openTests = new StringBuilder();
-            StringBuilder valuer = new StringBuilder();
+    /**
+     * Starts downloading PDF statements in the background once {@code after} completes.
+     */
+    private CompletableFuture<Void> startStatementsDownload(final int polygonContestId,
+                                                            final List<String> statementsFiles,
+                                                            final CompletableFuture<?> after) {
+        return after.thenRunAsync(() -> {
+            try {
+                downloadStatements(polygonContestId, statementsFiles);
+            } catch (ContestManagerException e) {
+                throw new CompletionException(e);
+            }
+        }, apiExecutor);
+    }
 
-            valuer.append("""
-                    global {
-                    	stat_to_users;
-                    }
-                    """).append(System.lineSeparator());
+    public void importContest(final int polygonContestId, final int ejudgeContestId) throws ContestManagerException {
+        importContest(polygonContestId, List.of(ejudgeContestId));
+    }
 
-            for (TestGroup group : groups) {
-                int first = groupTests.get(group.getName()).get(0);
-                int last = groupTests.get(group.getName()).get(groupTests.get(group.getName()).size() - 1);
+    /**
+     * Imports a Polygon contest into several ejudge contests at once. Every problem is downloaded and converted only
+     * once into the first contest and then replicated into the others with hard links.
+     * <p>
+     * Progress is recorded in an import journal of the first contest. If the import is interrupted, running it again
+     * resumes it: problems which were already imported are not downloaded and converted again.
+     */
+    public void importContest(final int polygonContestId, final List<Integer> ejudgeContestIds)
+            throws ContestManagerException {
+        importContest(polygonContestId, ejudgeContestIds, false);
+    }
 
-                if (!openTests.isEmpty()) {
-                    openTests.append(",");
-                }
-                switch (group.getFeedbackPolicy()) {
-                    case NONE, POINTS -> openTests.append(String.format("%d-%d:hidden", first + 1, last + 1));
-                    case ICPC -> openTests.append(String.format("%d-%d:brief", first + 1, last + 1));
-                    case COMPLETE -> openTests.append(String.format("%d-%d:full", first + 1, last + 1));
-                }
+    /**
+     * Same as {@link #importContest(int, List)}, but if {@code buildPackages} is set, packages are first built in
+     * Polygon for problems that have no READY package of their latest revision. All builds run at the same time and
+     * every problem is imported as soon as its package is ready.
+     */
+    public void importContest(final int polygonContestId, final List<Integer> ejudgeContestIds,
+                              final boolean buildPackages) throws ContestManagerException {
+        if (ejudgeContestIds.isEmpty()) {
+            throw new ContestManagerException("no ejudge contests to import to");
+        }
+        metrics = new Metrics();
 
-                int score = 0;
-                int minScore = Integer.MAX_VALUE;
-                int maxScore = Integer.MIN_VALUE;
-                for (int testId : groupTests.get(group.getName())) {
-                    int currentScore = tests.get(testId).getPoints().intValue();
-                    score += currentScore;
-                    minScore = Math.min(minScore, currentScore);
-                    maxScore = Math.max(maxScore, currentScore);
-                }
-                String dependencies = String.join(",", group.getDependencies());
+        List<Path> contestDirectories = new ArrayList<>();
+        List<String> statementsFiles = new ArrayList<>();
+        for (int ejudgeContestId : ejudgeContestIds) {
+            contestDirectories.add(contestsDir.resolve(String.format("%06d", ejudgeContestId)));
+            statementsFiles.add(getStatementsFile(ejudgeContestId));
+        }
+        log.info(String.format("Importing contest %d to %s", polygonContestId, contestDirectories.stream()
+                .map(Path::toString)
+                .collect(Collectors.joining(", "))));
+
+        String job = String.format("polygon %d ejudge %s", polygonContestId, ejudgeContestIds.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(",")));
+        Path journalPath = getStateDirectory(contestDirectories.get(0)).resolve("import.journal");
+        boolean resume = Files.exists(journalPath);
+        ImportJournal resumedJournal = null;
+        if (resume) {
+            resumedJournal = openJournal(journalPath, job);
+            log.info(String.format("Resuming interrupted import from %s", journalPath));
+            if (resumedJournal.isWritten()) {
+                finishImport(startStatementsDownload(polygonContestId, statementsFiles,
+                        CompletableFuture.completedFuture(null)), resumedJournal);
+                return;
+            }
+        }
 
-                if (last - first + 1 != groupTests.get(group.getName()).size()) {
-                    throw new ContestManagerException("some groups are not continuous");
-                }
+        // Packages built during the import may change the statements, so then the download waits for the builds.
+        CompletableFuture<Void> statements = buildPackages ? null
+                : startStatementsDownload(polygonContestId, statementsFiles, CompletableFuture.completedFuture(null));
 
-                valuer.append(String.format("group %s {", group.getName())).append(System.lineSeparator());
+        try {
+            Map<String, Problem> problems = loadContestProblems(polygonContestId);
+            Map<String, ProblemMetadata> problemsMetadata = new HashMap<>();
+            for (String shortName : problems.keySet()) {
+                ProblemMetadata metadata = new ProblemMetadata(session, problems.get(shortName), apiExecutor, metrics);
+                problemsMetadata.put(shortName, metadata.prefetch());
+            }
 
-                valuer.append(String.format("\ttests %d-%d;", first + 1, last + 1)).append(System.lineSeparator());
-                valuer.append(String.format("\tscore %d;", score)).append(System.lineSeparator());
-                if (group.getDependencies() != null && group.getDependencies().length > 0) {
-                    valuer.append(String.format("\trequires %s;", dependencies)).append(System.lineSeparator());
+            List<EjudgeConfigParser> parsers = new ArrayList<>();
+            for (Path contestDirectory : contestDirectories) {
+                try {
+                    parsers.add(prepareContest(contestDirectory, resume));
+                } catch (ContestManagerException e) {
+                    if (!resume) {
+                        deleteProblemsDirectories(contestDirectories.subList(0, parsers.size()));
+                    }
+                    throw e;
                 }
-                if (group.getFeedbackPolicy() == TestGroupFeedbackPolicy.COMPLETE
-                        || group.getPointsPolicy() == TestGroupPointsPolicy.EACH_TEST) {
-                    valuer.append("\ttest_all;").append(System.lineSeparator());
+            }
+
+            // A fresh import is journaled only once the contests are prepared, otherwise a failed attempt would make
+            // the next one resume into problems directories it did not create.
+            ImportJournal journal;
+            if (resumedJournal != null) {
+                journal = resumedJournal;
+            } else {
+                try {
+                    journal = openJournal(journalPath, job);
+                } catch (ContestManagerException e) {
+                    deleteProblemsDirectories(contestDirectories);
+                    throw e;
                 }
-                if (group.getPointsPolicy() == TestGroupPointsPolicy.EACH_TEST) {
-                    if (minScore != maxScore) {
-                        throw new ContestManagerException("group with EACH_TEST policy has tests with different scores");
+            }
+
+            log.info(String.format("Importing problems using %d threads", importThreads));
+            ExecutorService executor = Executors.newFixedThreadPool(importThreads);
+            List<Problem> problemsOrder = new ArrayList<>();
+            PackageBuilder packageBuilder = new PackageBuilder(apiExecutor, packageBuildTimeout * 1000);
+            List<CompletableFuture<Void>> packagesReady = new ArrayList<>();
+            List<Future<String>> problemConfigs = new ArrayList<>();
+            int problemId = 0;
+            for (String shortName : problems.keySet()) {
+                Problem problem = problems.get(shortName);
+                int ejudgeProblemId = ++problemId;
+
+                problemsOrder.add(problem);
+                ProblemMetadata metadata = problemsMetadata.get(shortName);
+                CompletableFuture<Void> packageReady = buildPackages
+                        && journal.getProblemConfig(ejudgeProblemId, problem.getName()) == null
+                        ? packageBuilder.ensureReady(metadata)
+                        : CompletableFuture.completedFuture(null);
+                packagesReady.add(packageReady);
+                problemConfigs.add(packageReady.thenApplyAsync(ignored -> {
+                    try {
+                        return importProblemToContests(metadata, ejudgeProblemId, shortName, contestDirectories,
+                                statementsFiles, journal);
+                    } catch (PolygonSessionException | IOException | ContestManagerException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            if (statements == null) {
+                statements = startStatementsDownload(polygonContestId, statementsFiles,
+                        CompletableFuture.allOf(packagesReady.toArray(CompletableFuture[]::new))
+                                .exceptionally(e -> null));
+            }
+
+            for (int i = 0; i < problemsOrder.size(); i++) {
+                Problem problem = problemsOrder.get(i);
+                try {
+                    String config = problemConfigs.get(i).get();
+                    for (EjudgeConfigParser parser : parsers) {
+                        parser.addProblem(config);
+                    }
+                } catch (ExecutionException e) {
+                    log.warning(String.format("Failed to load problem %s (%s)", problem.getName(),
+                            e.getCause().getMessage()));
+
+                    for (Path contestDirectory : contestDirectories) {
+                        try {
+                            FileUtils.deleteDirectory(contestDirectory.resolve("problems").resolve(problem.getName())
+                                    .toFile());
+                        } catch (IOException ignored) {
+                        }
                     }
-                    valuer.append(String.format("\ttest_score %d;", minScore)).append(System.lineSeparator());
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new ContestManagerException("problems import was interrupted", e);
                 }
-                valuer.append("}").append(System.lineSeparator());
             }
+            executor.shutdown();
 
-            config.put("open_tests", openTests.toString());
+            for (int i = 0; i < contestDirectories.size(); i++) {
+                try {
+                    parsers.get(i).write(contestDirectories.get(i).resolve("conf").resolve("serve.cfg"));
+                } catch (IOException e) {
+                    throw new ContestManagerException(String.format("failed to write serve.cfg file of contest %d",
+                            ejudgeContestIds.get(i)), e);
+                }
+            }
             try {
-                Files.copy(gvaluerPath, problemDirectory.resolve("gvaluer"));
+                journal.configWritten();
             } catch (IOException e) {
-                throw new ContestManagerException("failed to copy gvaluer", e);
+                throw new ContestManagerException("failed to update import journal", e);
             }
-            config.put("valuer_cmd", "gvaluer");
-            config.put("interactive_valuer", "");
 
-            try (BufferedWriter writer = Files.newBufferedWriter(problemDirectory.resolve("valuer.cfg"))) {
-                writer.write(valuer.toString());
-            } catch (IOException e) {
-                throw new ContestManagerException("failed to write valuer.cfg");
+            finishImport(statements, journal);
+        } finally {
+            // A download that has not started yet is dropped, one in progress replaces the statements atomically.
+            if (statements != null && !statements.isDone()) {
+                statements.cancel(false);
             }
         }
-        config.put("check_cmd", "\"" + removeExtension(fileNames.get(0)) + "\"");
-        config.put("solution_cmd", "\"" + removeExtension(fileNames.get(1)) + "\"");
-        if (fileNames.size() == 3) {
-            config.put("interactor_cmd", "\"" + removeExtension(fileNames.get(2)) + "\"");
-        }
-        config.put("enable_testlib_mode", "");
-        config.put("enable_text_form", "");
-        config.put("enable_user_input", "");
+    }
 
-        StringBuilder configString = new StringBuilder();
-        configString.append("[problem]").append(System.lineSeparator());
-        for (Map.Entry<String, String> entry : config.entrySet()) {
-            if (entry.getValue().isEmpty()) {
-                configString.append(entry.getKey());
-            } else {
-                configString.append(entry.getKey()).append(" = ").append(entry.getValue());
+    /**
+     * Imports a problem into the first contest and replicates it into the others, unless the journal shows that it
+     * was already imported.
+     */
+    private String importProblemToContests(final ProblemMetadata metadata, final int ejudgeProblemId,
+                                           final String shortName, final List<Path> contestDirectories,
+                                           final List<String> statementsFiles, final ImportJournal journal)
+            throws PolygonSessionException, IOException, ContestManagerException {
+        Problem problem = metadata.getProblem();
+        List<Path> problemDirectories = contestDirectories.stream()
+                .map(directory -> directory.resolve("problems").resolve(problem.getName()))
+                .toList();
+        String journaledConfig = journal.getProblemConfig(ejudgeProblemId, problem.getName());
+        if (journaledConfig != null && problemDirectories.stream().allMatch(Files::isDirectory)) {
+            log.info(String.format("%s: already imported, skipping", problem.getName()));
+            return journaledConfig;
+        }
+        for (Path problemDirectory : problemDirectories) {
+            if (Files.exists(problemDirectory)) {
+                FileUtils.deleteDirectory(problemDirectory.toFile());
             }
-            configString.append(System.lineSeparator());
         }
 
-        return configString.toString();
+        String primaryUrl = statementsUrlPrefix + "/" + statementsFiles.get(0);
+        String config = importProblem(metadata, problemDirectories.get(0), ejudgeProblemId, shortName,
+                primaryUrl);
+        for (int i = 1; i < problemDirectories.size(); i++) {
+            log.info(String.format("%s: replicating to %s", problem.getName(), problemDirectories.get(i)));
+            replicateProblem(problemDirectories.get(0), problemDirectories.get(i), primaryUrl,
+                    statementsUrlPrefix + "/" + statementsFiles.get(i));
+        }
+        journal.problemDone(ejudgeProblemId, problem.getName(), config);
+        return config;
     }
 
-    private void generateStatement(final Path tmpDir, final Problem problem, final Path problemDirectory,
-                                   final String statementsUrl)
-            throws PolygonSessionException, IOException {
-        Map<String, Statement> statements = session.problemStatements(problem.getId());
+    private void finishImport(final CompletableFuture<Void> statements, final ImportJournal journal)
+            throws ContestManagerException {
+        try {
+            statements.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ContestManagerException cause) {
+                throw cause;
+            }
+            throw new ContestManagerException("failed to download pdf statements", e.getCause());
+        }
+        try {
+            journal.finish();
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to delete import journal", e);
+        }
+        reportMetrics("import");
+    }
 
-        log.info("Generating statement...");
-        log.info("Copying statement resources...");
-        Path statementPath = tmpDir.resolve("statements").resolve(".html").resolve(statementsLang).resolve("problem.html");
-        Files.createDirectory(problemDirectory.resolve("attachments"));
-        try (Stream<Path> files = Files.list(tmpDir.resolve("statements").resolve(".html").resolve(statementsLang))) {
-            files.map(Path::getFileName)
-                    .map(Path::toString)
-                    .filter(p -> !p.endsWith(".html") && !p.endsWith(".css"))
-                    .forEach(p -> {
-                        try {
-                            Files.copy(tmpDir.resolve("statements").resolve(".html").resolve(statementsLang).resolve(p),
-                                    problemDirectory.resolve("attachments").resolve(p));
-                        } catch (IOException e) {
-                            log.warning(String.format("Could not copy statement resource %s", p));
-                        }
-                    });
+    private ImportJournal openJournal(final Path journalPath, final String job) throws ContestManagerException {
+        ImportJournal journal;
+        try {
+            journal = ImportJournal.open(journalPath, job);
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to open import journal", e);
+        }
+        if (!journal.getJob().equals(job)) {
+            throw new ContestManagerException(String.format("%s belongs to an unfinished import (%s), run it again "
+                    + "to complete it or delete the journal", journalPath, journal.getJob()));
         }
+        return journal;
+    }
 
-        String content = "No statement available";
-        if (Files.exists(statementPath)) {
-            Document document = Jsoup.parse(statementPath.toFile());
-            document.outputSettings().syntax(Document.OutputSettings.Syntax.xml);
-            document.outputSettings().escapeMode(Entities.EscapeMode.xhtml);
-            document.outputSettings().indentAmount(0).prettyPrint(false);
-            Elements legendElements = document.getElementsByClass("problem-statement");
-            if (!legendElements.isEmpty()) {
-                Element legendElement = legendElements.get(0);
-                legendElement.select(".header").remove();
-                legendElement.select("img").forEach(element -> {
-                    String src = element.attr("src");
-                    element.attr("src", "${getfile}=" + src);
-                });
+    private void deleteProblemsDirectories(final List<Path> contestDirectories) {
+        for (Path contestDirectory : contestDirectories) {
+            try {
+                Files.delete(contestDirectory.resolve("problems"));
+            } catch (IOException ignored) {
+            }
+        }
+    }
 
-                content = legendElement.toString().replace("$$$$$$", "$$").replace("$$$", "$");
+    private EjudgeConfigParser prepareContest(final Path contestDirectory, final boolean resume)
+            throws ContestManagerException {
+        try {
+            if (resume) {
+                Files.createDirectories(contestDirectory.resolve("problems"));
+            } else {
+                Files.createDirectory(contestDirectory.resolve("problems"));
             }
-        } else {
-            log.warning(String.format("There is no statements in %s", statementsLang));
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to create problems directory", e);
         }
 
-        String statement = String.format("""
-                <?xml version="1.0" encoding="utf-8" ?>
-                <problem>
-                <statement language="ru_RU">
-                <description>
-                <p><a href = "%s">[Условия всех задач в pdf]</a></p>
-                %s
-                </description>
-                </statement>
-                </problem>
-                """, statementsUrl, content);
+        log.info(String.format("Parsing serve.cfg of %s", contestDirectory));
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        Path serveCfgPath = contestDirectory.resolve("conf").resolve("serve.cfg");
+        Path backupPath = contestDirectory.resolve("conf").resolve("serve.cfg.old");
+        try {
+            // The interrupted run may have written some serve.cfg files already, so a resumed run starts from the
+            // backup it made before any change instead of appending problems to the new config again.
+            if (resume) {
+                parser.parse(backupPath);
+            } else {
+                parser.parse(serveCfgPath);
+                Files.copy(serveCfgPath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (!resume) {
+                try {
+                    Files.delete(contestDirectory.resolve("problems"));
+                } catch (IOException ignored) {
+                }
+            }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(problemDirectory.resolve("statement.xml"),
-                StandardCharsets.UTF_8)) {
-            writer.write(statement);
+            throw new ContestManagerException("failed to parse serve.cfg file", e);
         }
+        return parser;
     }
 
-    private String importProblem(final Problem problem, final int ejudgeContestId, final int ejudgeProblemId,
-                                 final String problemShortName, final String statementsUrl)
-            throws PolygonSessionException, IOException, ContestManagerException {
-        Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
-        Path problemDirectory = contestDirectory.resolve("problems").resolve(problem.getName());
-        log.info(String.format("Importing problem %s to %s", problem.getName(), contestDirectory));
-
-        Path tmpDir = problemDirectory.resolve("tmp");
-        Files.createDirectory(problemDirectory);
-        Files.createDirectory(tmpDir);
-
-        ProblemInfo problemInfo = session.problemInfo(problem.getId());
-        ProblemPackage[] packages = session.problemPackages(problem.getId());
-        Optional<ProblemPackage> lastPackage = Arrays.stream(packages)
-                .filter(p -> p.getState() == PackageState.READY)
-                .max(Comparator.comparingInt(ProblemPackage::getId));
-        if (lastPackage.isEmpty()) {
-            throw new ContestManagerException("there is no generated READY package");
+    /**
+     * Copies an imported problem directory into another contest. Files are hard linked where possible, only
+     * statement.xml is rewritten to point to the statements of the target contest.
+     */
+    private void replicateProblem(final Path source, final Path target, final String sourceUrl,
+                                  final String targetUrl) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.walk(source)) {
+            paths = files.toList();
         }
 
-        log.info("Downloading package #" + lastPackage.get().getId());
-        Path packagePath = tmpDir.resolve("package.zip");
-        session.problemPackage(problem.getId(), lastPackage.get().getId(), "linux", packagePath.toFile());
-
-        log.info("Extracting archive...");
-        try (ZipFile zipFile = new ZipFile(packagePath.toFile())) {
-            zipFile.extractAll(tmpDir.toString());
+        Metrics.Timer timer = metrics.start(Metrics.Phase.MOVES);
+        long bytes = 0;
+        int fileCount = 0;
+        for (Path path : paths) {
+            Path targetPath = target.resolve(source.relativize(path).toString());
+            if (Files.isDirectory(path)) {
+                Files.createDirectories(targetPath);
+            } else if (path.equals(source.resolve("statement.xml"))) {
+                String statement = Files.readString(path, StandardCharsets.UTF_8);
+                Files.writeString(targetPath, statement.replace("\"" + sourceUrl + "\"", "\"" + targetUrl + "\""),
+                        StandardCharsets.UTF_8);
+            } else {
+                try {
+                    Files.createLink(targetPath, path);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(path, targetPath, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+            if (!Files.isDirectory(path)) {
+                bytes += Files.size(path);
+                fileCount++;
+            }
         }
+        timer.stop(bytes, fileCount);
+    }
 
-        List<String> fileNames = moveFiles(tmpDir, problemDirectory, problem, problemInfo);
-        String configString = generateProblemConfig(problemInfo, problem, ejudgeProblemId, problemShortName, fileNames,
-                problemDirectory);
-        generateStatement(tmpDir, problem, problemDirectory, statementsUrl);
+    private String syncProblem(final ProblemMetadata metadata, final Path problemDirectory, final int ejudgeProblemId,
+                               final String problemShortName, final String statementsUrl)
+            throws PolygonSessionException, IOException, ContestManagerException {
+        Problem problem = metadata.getProblem();
+        Path syncDirectory = problemDirectory.resolveSibling("." + problem.getName() + ".sync");
+        if (Files.exists(syncDirectory)) {
+            FileUtils.deleteDirectory(syncDirectory.toFile());
+        }
 
-        log.info("Cleaning up...");
-        FileUtils.deleteDirectory(tmpDir.toFile());
+        String problemConfig;
+        try {
+            problemConfig = importProblem(metadata, syncDirectory, ejudgeProblemId, problemShortName, statementsUrl);
+        } catch (PolygonSessionException | IOException | ContestManagerException | RuntimeException e) {
+            FileUtils.deleteDirectory(syncDirectory.toFile());
+            throw e;
+        }
 
-        return configString;
+        Metrics.Timer timer = metrics.start(Metrics.Phase.MOVES);
+        if (Files.exists(problemDirectory)) {
+            FileUtils.deleteDirectory(problemDirectory.toFile());
+        }
+        Files.move(syncDirectory, problemDirectory);
+        timer.stop(0, 1);
+        return problemConfig;
     }
 
-    public void importContest(final int polygonContestId, final int ejudgeContestId) throws ContestManagerException {
-        Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
-        log.info(String.format("Importing contest %d to %s", polygonContestId, contestDirectory));
+    public void syncContest(final int polygonContestId, final int ejudgeContestId) throws ContestManagerException {
+        synchronizeContest(polygonContestId, ejudgeContestId, problem -> true);
+    }
 
-        Random random = new Random(ejudgeContestId);
-        String statementsFile = "contest-" + ejudgeContestId + "-" +
-                RandomStringUtils.random(8, 'a', 'z', true, false, null, random) + ".pdf";
+    /**
+     * Synchronizes only the given problems of the contest, returns whether any of them was re-imported.
+     */
+    public boolean syncProblems(final int polygonContestId, final int ejudgeContestId, final Set<String> problemNames)
+            throws ContestManagerException {
+        return synchronizeContest(polygonContestId, ejudgeContestId,
+                problem -> problemNames.contains(problem.getName()));
+    }
 
+    /**
+     * Returns names of the problems whose latest READY Polygon package differs from the package imported into any of
+     * the ejudge contests, which is the same check that synchronization makes. A problem whose latest packaged
+     * revision in the contest problems list equals the revision recorded in all its manifests is up to date without
+     * further requests. Packages lists are requested, concurrently, only for the remaining problems.
+     */
+    public Set<String> findOutdatedProblems(final int polygonContestId, final List<Integer> ejudgeContestIds)
+            throws ContestManagerException {
         Map<String, Problem> problems;
         try {
             problems = session.contestProblems(polygonContestId);
-            log.info(String.format("Problems list loaded, found %d problems: %s",
-                    problems.size(),
-                    problems.values().stream()
-                            .map(Problem::getName)
-                            .collect(Collectors.joining(System.lineSeparator() + "\t",
-                                    System.lineSeparator() + "\t", ""))));
         } catch (PolygonSessionException e) {
             throw new ContestManagerException("failed to load problems list", e);
         }
 
-        try {
-            Files.createDirectory(contestDirectory.resolve("problems"));
-        } catch (IOException e) {
-            throw new ContestManagerException("failed to create problems directory", e);
+        Set<String> outdatedProblems = new TreeSet<>();
+        Map<ProblemMetadata, List<ProblemManifest>> changedProblems = new LinkedHashMap<>();
+        for (Problem problem : problems.values()) {
+            List<ProblemManifest> manifests = new ArrayList<>();
+            for (int ejudgeContestId : ejudgeContestIds) {
+                Path problemDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId))
+                        .resolve("problems").resolve(problem.getName());
+                try {
+                    manifests.add(ProblemManifest.read(problemDirectory));
+                } catch (IOException e) {
+                    log.warning(String.format("Failed to read manifest of %s (%s)", problemDirectory,
+                            e.getMessage()));
+                    manifests.add(null);
+                }
+            }
+            if (manifests.contains(null)) {
+                outdatedProblems.add(problem.getName());
+                continue;
+            }
+            Integer latestRevision = problem.getLatestPackage();
+            if (latestRevision != null && manifests.stream()
+                    .allMatch(manifest -> manifest.getPackageRevision() == latestRevision)) {
+                continue;
+            }
+
+            ProblemMetadata metadata = new ProblemMetadata(session, problem, apiExecutor);
+            metadata.getPackagesAsync();
+            changedProblems.put(metadata, manifests);
         }
 
+        for (Map.Entry<ProblemMetadata, List<ProblemManifest>> entry : changedProblems.entrySet()) {
+            Problem problem = entry.getKey().getProblem();
+            int packageId;
+            try {
+                packageId = getLatestPackage(entry.getKey()).getId();
+            } catch (PolygonSessionException | ContestManagerException e) {
+                log.warning(String.format("Failed to check problem %s (%s)", problem.getName(), e.getMessage()));
+                continue;
+            }
+            if (entry.getValue().stream().anyMatch(manifest -> manifest.getPackageId() != packageId)) {
+                outdatedProblems.add(problem.getName());
+            }
+        }
+        return outdatedProblems;
+    }
+
+    private boolean synchronizeContest(final int polygonContestId, final int ejudgeContestId,
+                                       final Predicate<Problem> filter) throws ContestManagerException {
+        metrics = new Metrics();
+        Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
+        log.info(String.format("Synchronizing contest %d with %s", polygonContestId, contestDirectory));
+
+        String statementsFile = getStatementsFile(ejudgeContestId);
+        Map<String, Problem> problems = loadContestProblems(polygonContestId);
+
         log.info("Parsing serve.cfg");
         EjudgeConfigParser parser = new EjudgeConfigParser();
         Path serveCfgPath = contestDirectory.resolve("conf").resolve("serve.cfg");
         try {
             parser.parse(serveCfgPath);
-            Files.move(serveCfgPath, contestDirectory.resolve("conf").resolve("serve.cfg.old"));
+            Files.createDirectories(contestDirectory.resolve("problems"));
         } catch (IOException e) {
-            try {
-                Files.delete(contestDirectory.resolve("problems"));
-            } catch (IOException ignored) {
-            }
-
-            throw new ContestManagerException("failed to create problems directory", e);
+            throw new ContestManagerException("failed to parse serve.cfg", e);
         }
 
-        int problemId = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(importThreads);
+        List<Problem> changedProblems = new ArrayList<>();
+        List<Integer> changedProblemIds = new ArrayList<>();
+        List<Future<String>> problemConfigs = new ArrayList<>();
+        int nextProblemId = parser.getMaxProblemId();
         for (String shortName : problems.keySet()) {
             Problem problem = problems.get(shortName);
-            problemId++;
+            if (!filter.test(problem)) {
+                continue;
+            }
+            Path problemDirectory = contestDirectory.resolve("problems").resolve(problem.getName());
 
+            Integer ejudgeProblemId = parser.findProblemIdByInternalName(problem.getName());
+            ProblemMetadata metadata = new ProblemMetadata(session, problem, apiExecutor, metrics);
             try {
-                String problemConfig = importProblem(problem, ejudgeContestId, problemId, shortName,
-                        statementsUrlPrefix + "/" + statementsFile);
-                parser.getProblems().add(problemConfig);
-            } catch (PolygonSessionException | IOException e) {
-                log.warning(String.format("Failed to load problem %s (%s)", problem.getName(), e.getMessage()));
-
-                try {
-                    FileUtils.deleteDirectory(contestDirectory.resolve("problems").resolve(problem.getName()).toFile());
-                } catch (IOException ignored) {
+                ProblemManifest manifest = ProblemManifest.read(problemDirectory);
+                int packageId = getLatestPackage(metadata).getId();
+                if (ejudgeProblemId != null && manifest != null && manifest.getPackageId() == packageId) {
+                    log.info(String.format("%s: package #%d is already imported", problem.getName(), packageId));
+                    continue;
                 }
+                log.info(String.format("%s: package #%d is not imported yet", problem.getName(), packageId));
+            } catch (PolygonSessionException | IOException | ContestManagerException e) {
+                log.warning(String.format("Failed to check problem %s (%s)", problem.getName(), e.getMessage()));
+                continue;
             }
+
+            int problemId = ejudgeProblemId != null ? ejudgeProblemId : ++nextProblemId;
+            changedProblems.add(problem);
+            changedProblemIds.add(ejudgeProblemId);
+            metadata.prefetch();
+            problemConfigs.add(executor.submit(() -> syncProblem(metadata, problemDirectory, problemId, shortName,
+                    statementsUrlPrefix + "/" + statementsFile)));
         }
+        executor.shutdown();
 
-        try (BufferedWriter writer = Files.newBufferedWriter(contestDirectory.resolve("conf").resolve("serve.cfg"),
-                StandardCharsets.UTF_8)) {
-            writer.write(parser.toString());
-        } catch (IOException e) {
+        boolean changed = false;
+        for (int i = 0; i < changedProblems.size(); i++) {
+            Problem problem = changedProblems.get(i);
             try {
-                Files.delete(contestDirectory.resolve("problems"));
-            } catch (IOException ignored) {
+                String problemConfig = problemConfigs.get(i).get();
+                if (changedProblemIds.get(i) != null) {
+                    parser.replaceProblemById(changedProblemIds.get(i), problemConfig);
+                } else {
+                    parser.addProblem(problemConfig);
+                }
+                changed = true;
+            } catch (ExecutionException e) {
+                log.warning(String.format("Failed to synchronize problem %s (%s)", problem.getName(),
+                        e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new ContestManagerException("problems synchronization was interrupted", e);
             }
-
-            throw new ContestManagerException("failed to write serve.cfg file", e);
         }
 
-        if (Files.exists(statementsDir.resolve(statementsFile))) {
-            try {
-                Files.delete(statementsDir.resolve(statementsFile));
-            } catch (IOException e) {
-                throw new ContestManagerException("failed to delete old statements file", e);
-            }
+        if (!changed) {
+            log.info("Contest is up to date");
+            reportMetrics("sync");
+            return false;
         }
 
-        log.info("Downloading PDF statements...");
         try {
-            userSession.contestGetStatementsFromPackages(polygonContestId, statementsDir.resolve(statementsFile));
-        } catch (PolygonUserSessionException e) {
-            throw new ContestManagerException("failed to download pdf statements", e);
+            parser.write(serveCfgPath);
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to write serve.cfg file", e);
         }
+
+        downloadStatements(polygonContestId, List.of(statementsFile));
+        reportMetrics("sync");
+        return true;
     }
 
     public void removeProblem(final int ejudgeContestId, final int problemId) throws ContestManagerException {
@@ -552,6 +889,11 @@ public class ContestManager {
 
         log.info("Cleaning serve.cfg");
         parser.removeProblemById(problemId);
+        try {
+            parser.write(contestDirectory.resolve("conf").resolve("serve.cfg"));
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to write serve.cfg", e);
+        }
 
         log.info(String.format("Removing \"%s\" directory", internalName));
         Path problemsDirectory = contestDirectory.resolve("problems");
@@ -562,6 +904,13 @@ public class ContestManager {
                 throw new ContestManagerException("failed to delete problem directory", e);
             }
         }
+
+        try {
+            getSubmissionLedger(contestDirectory).forget(problemId);
+            getRunLog(contestDirectory).forget(problemId);
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to update submission ledger and runs log", e);
+        }
     }
 
     public void removeContest(final int ejudgeContestId) throws ContestManagerException {
@@ -586,63 +935,156 @@ public class ContestManager {
             throw new ContestManagerException("failed to parse serve.cfg", e);
         }
 
-        parser.getProblems().clear();
+        parser.clearProblems();
 
-        try (BufferedWriter writer = Files.newBufferedWriter(contestDirectory.resolve("conf").resolve("serve.cfg"),
-                StandardCharsets.UTF_8)) {
-            writer.write(parser.toString());
+        try {
+            parser.write(contestDirectory.resolve("conf").resolve("serve.cfg"));
         } catch (IOException e) {
             throw new ContestManagerException("failed to write serve.cfg", e);
         }
+
+        try {
+            getSubmissionLedger(contestDirectory).clear();
+            getRunLog(contestDirectory).clear();
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to clear submission ledger and runs log", e);
+        }
     }
 
-    public void submitProblem(final int ejudgeContestId, final int problemId)
-            throws EjudgeSessionException, ContestManagerException {
-        EjudgeSession ejudgeSession = new EjudgeSession();
+    private void submitProblem(final SubmissionEngine engine, final EjudgeConfigParser parser,
+                               final int ejudgeContestId, final int problemId) throws ContestManagerException {
         Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
         log.info(String.format("Submitting all runs for contest %d and problem %d", ejudgeContestId, problemId));
 
-        EjudgeConfigParser parser = new EjudgeConfigParser();
-        try {
-            parser.parse(contestDirectory.resolve("conf").resolve("serve.cfg"));
-        } catch (IOException e) {
-            throw new ContestManagerException("failed to parse serve.cfg", e);
-        }
         String internalName = parser.getProblemInternalNameById(problemId);
         Path problemsDirectory = contestDirectory.resolve("problems");
         Path problemPath = problemsDirectory.resolve(internalName);
         Path solutionsPath = problemPath.resolve("solutions");
         try (Stream<Path> solutionsStream = Files.list(solutionsPath)) {
-            solutionsStream
-                    .map(Path::getFileName)
-                    .map(Path::toString)
-                    .map(filename -> filename.split("\\."))
-                    .filter(parts -> parts.length == 2)
-                    .forEach(parts -> {
-                        String source;
-                        Path solutionPath = solutionsPath.resolve(String.join(".", parts));
-                        try (BufferedReader reader = Files.newBufferedReader(solutionPath, StandardCharsets.UTF_8)) {
-                            source = reader.lines().collect(Collectors.joining(System.lineSeparator()));
-                        } catch (IOException e) {
-                            log.warning("Could not read solution file");
-                            return;
-                        }
-
-                        try {
-                            ejudgeSession.submitSolution(ejudgeContestId, source, problemId, parts[1]);
-                        } catch (EjudgeSessionException e) {
-                            log.warning(String.format("Could not read solution file %s",
-                                    String.join(".", parts)));
-                        }
-                    });
+            solutionsStream.sorted().forEach(solutionPath -> engine.submit(ejudgeContestId, problemId, solutionPath));
         } catch (IOException e) {
             log.warning(String.format("Failed to iterate over solutions of problem %s",
                     problemPath.getFileName()));
         }
     }
 
+    private void reportMetrics(final String command) {
+        log.info(String.format("Phases: %s", metrics.summary()));
+        if (metricsDir == null) {
+            return;
+        }
+        try {
+            metrics.write(metricsDir, command);
+        } catch (IOException e) {
+            log.warning(String.format("Failed to write metrics to %s (%s)", metricsDir, e.getMessage()));
+        }
+    }
+
+    private Path getStateDirectory(final Path contestDirectory) {
+        return contestDirectory.resolve(".polygon2ejudge");
+    }
+
+    private RunLog getRunLog(final Path contestDirectory) {
+        return new RunLog(getStateDirectory(contestDirectory).resolve("runs.log"));
+    }
+
+    private SubmissionLedger getSubmissionLedger(final Path contestDirectory) {
+        return new SubmissionLedger(getStateDirectory(contestDirectory).resolve("submissions.ledger"));
+    }
+
+    /**
+     * Returns the ejudge session shared by all commands of this manager, so that a long-lived manager reuses its
+     * connections and SIDs.
+     */
+    private synchronized EjudgeSession getEjudgeSession() throws EjudgeSessionException {
+        if (ejudgeSession == null) {
+            ejudgeSession = new EjudgeSession();
+        }
+        return ejudgeSession;
+    }
+
+    private SubmissionEngine createSubmissionEngine(final EjudgeSession ejudgeSession, final Path contestDirectory,
+                                                    final boolean force) {
+        return new SubmissionEngine(ejudgeSession, getRunLog(contestDirectory), getSubmissionLedger(contestDirectory),
+                force, metrics, submitThreads, submitRate, submitRetries, 1000);
+    }
+
+    private void awaitSubmissions(final SubmissionEngine engine) throws EjudgeSessionException {
+        SubmissionEngine.Summary summary;
+        try {
+            summary = engine.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EjudgeSessionException("submission was interrupted", e);
+        }
+
+        log.info(String.format("Submitted: %d, unchanged since last submission: %d, "
+                        + "skipped (unsupported extension): %d, failed: %d", summary.submitted().size(),
+                summary.unchanged().size(), summary.skipped().size(), summary.failed().size()));
+        for (String name : summary.skipped()) {
+            log.info(String.format("Skipped %s", name));
+        }
+        for (String name : summary.failed()) {
+            log.warning(String.format("Failed %s", name));
+        }
+        reportMetrics("submit");
+        if (!summary.failed().isEmpty()) {
+            throw new EjudgeSessionException(String.format("%d solutions were not submitted",
+                    summary.failed().size()));
+        }
+    }
+
+    /**
+     * Waits for the solutions queued before {@code failure}, so that they are still recorded and reported and the
+     * engine threads stop. Errors of the submissions themselves are attached to {@code failure}.
+     */
+    private void awaitSubmissionsAfterFailure(final SubmissionEngine engine, final Exception failure) {
+        try {
+            awaitSubmissions(engine);
+        } catch (EjudgeSessionException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    public void submitProblem(final int ejudgeContestId, final int problemId)
+            throws EjudgeSessionException, ContestManagerException {
+        submitProblem(ejudgeContestId, problemId, false);
+    }
+
+    /**
+     * Submits solutions of the problem that were not submitted before, or all of them if {@code force} is set.
+     */
+    public void submitProblem(final int ejudgeContestId, final int problemId, final boolean force)
+            throws EjudgeSessionException, ContestManagerException {
+        metrics = new Metrics();
+        Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        try {
+            parser.parse(contestDirectory.resolve("conf").resolve("serve.cfg"));
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to parse serve.cfg", e);
+        }
+
+        SubmissionEngine engine = createSubmissionEngine(getEjudgeSession(), contestDirectory, force);
+        try {
+            submitProblem(engine, parser, ejudgeContestId, problemId);
+        } catch (ContestManagerException | RuntimeException e) {
+            awaitSubmissionsAfterFailure(engine, e);
+            throw e;
+        }
+        awaitSubmissions(engine);
+    }
+
     public void submitContest(final int ejudgeContestId) throws EjudgeSessionException, ContestManagerException {
-        EjudgeSession ejudgeSession = new EjudgeSession();
+        submitContest(ejudgeContestId, false);
+    }
+
+    /**
+     * Submits solutions of all problems that were not submitted before, or all of them if {@code force} is set.
+     */
+    public void submitContest(final int ejudgeContestId, final boolean force)
+            throws EjudgeSessionException, ContestManagerException {
+        metrics = new Metrics();
         Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
         log.info(String.format("Submitting all runs from %s", contestDirectory));
 
@@ -654,15 +1096,149 @@ public class ContestManager {
         }
 
         Path problemsDirectory = contestDirectory.resolve("problems");
+        List<Path> problemPaths;
         try (Stream<Path> stream = Files.list(problemsDirectory)) {
-            List<Path> problemPaths = stream.toList();
+            problemPaths = stream
+                    .filter(path -> !path.getFileName().toString().startsWith("."))
+                    .toList();
+        } catch (IOException e) {
+            throw new EjudgeSessionException("failed to iterate the problems", e);
+        }
+
+        SubmissionEngine engine = createSubmissionEngine(getEjudgeSession(), contestDirectory, force);
+        try {
             for (Path problemPath : problemPaths) {
                 String internalName = problemPath.getFileName().toString();
                 int problemId = parser.getProblemIdByInternalName(internalName);
-                submitProblem(ejudgeContestId, problemId);
+                submitProblem(engine, parser, ejudgeContestId, problemId);
+            }
+        } catch (ContestManagerException | RuntimeException e) {
+            awaitSubmissionsAfterFailure(engine, e);
+            throw e;
+        }
+        awaitSubmissions(engine);
+    }
+
+    /**
+     * Checks an ejudge verdict against a Polygon solution tag. Throws for tags that have no mapping to ejudge
+     * verdicts, so that such runs are reported instead of silently passing.
+     */
+    private boolean isExpectedVerdict(final SolutionTag tag, final String status) throws ContestManagerException {
+        boolean accepted = status.equals("OK") || status.equals("AC");
+        return switch (tag) {
+            case MA, OK -> accepted;
+            case RJ -> !accepted;
+            case TO -> accepted || status.equals("TL") || status.equals("WT");
+            case TL -> status.equals("TL") || status.equals("WT") || status.equals("PT");
+            case WA -> status.equals("WA") || status.equals("PT");
+            case PE -> status.equals("PE") || status.equals("PT");
+            case ML -> status.equals("ML") || status.equals("PT");
+            case RE -> status.equals("RT") || status.equals("PT");
+            default -> throw new ContestManagerException(String.format("solution tag %s is not supported", tag));
+        };
+    }
+
+    public void verifyContest(final int ejudgeContestId) throws EjudgeSessionException, ContestManagerException {
+        Path contestDirectory = contestsDir.resolve(String.format("%06d", ejudgeContestId));
+        log.info(String.format("Verifying runs of %s", contestDirectory));
+
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        Map<String, RunLog.Run> runs = new LinkedHashMap<>();
+        try {
+            parser.parse(contestDirectory.resolve("conf").resolve("serve.cfg"));
+            for (RunLog.Run run : getRunLog(contestDirectory).read()) {
+                runs.put(run.problemId() + "/" + run.solution(), run);
             }
         } catch (IOException e) {
-            throw new EjudgeSessionException("failed to iterate the problems", e);
+            throw new ContestManagerException("failed to read runs log", e);
+        }
+        if (runs.isEmpty()) {
+            log.info("There are no submitted runs");
+            return;
+        }
+
+        Map<Integer, Map<String, SolutionTag>> tags = new HashMap<>();
+        for (RunLog.Run run : runs.values()) {
+            if (tags.containsKey(run.problemId())) {
+                continue;
+            }
+
+            String extId = parser.getProblemArgumentById(run.problemId(), "extid");
+            if (extId == null || !extId.startsWith("polygon:")) {
+                throw new ContestManagerException(String.format("problem %d is not imported from Polygon",
+                        run.problemId()));
+            }
+            try {
+                Solution[] solutions = session.problemSolutions(Integer.parseInt(extId.substring("polygon:".length())));
+                tags.put(run.problemId(), Arrays.stream(solutions)
+                        .collect(Collectors.toMap(Solution::getName, Solution::getTag)));
+            } catch (PolygonSessionException | NumberFormatException e) {
+                throw new ContestManagerException(String.format("failed to load solutions of problem %d",
+                        run.problemId()), e);
+            }
+        }
+
+        Map<Integer, String> verdicts;
+        try {
+            VerdictPoller poller = new VerdictPoller(getEjudgeSession(), ejudgeContestId, verdictBatchSize, 2000,
+                    60000);
+            verdicts = poller.poll(runs.values().stream().map(RunLog.Run::runId).toList(), verdictTimeout * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EjudgeSessionException("verdicts polling was interrupted", e);
+        }
+
+        int mismatches = 0;
+        for (RunLog.Run run : runs.values()) {
+            SolutionTag tag = tags.get(run.problemId()).get(run.solution());
+            String verdict = verdicts.get(run.runId());
+            if (verdict == null) {
+                log.warning(String.format("Run %d (problem %d, %s) is still not judged", run.runId(), run.problemId(),
+                        run.solution()));
+                mismatches++;
+            } else if (tag == null) {
+                log.info(String.format("Run %d (problem %d, %s): %s, solution is not found in Polygon",
+                        run.runId(), run.problemId(), run.solution(), verdict));
+            } else {
+                try {
+                    if (!isExpectedVerdict(tag, verdict)) {
+                        log.warning(String.format("Run %d (problem %d, %s): expected %s, got %s", run.runId(),
+                                run.problemId(), run.solution(), tag, verdict));
+                        mismatches++;
+                    }
+                } catch (ContestManagerException e) {
+                    log.warning(String.format("Run %d (problem %d, %s): cannot check %s (%s)", run.runId(),
+                            run.problemId(), run.solution(), verdict, e.getMessage()));
+                    mismatches++;
+                }
+            }
+        }
+
+        log.info(String.format("Verified %d runs, %d mismatches", runs.size(), mismatches));
+        if (mismatches > 0) {
+            throw new ContestManagerException(String.format("%d runs have unexpected verdicts", mismatches));
+        }
+    }
+
+    public void collectGarbage() throws ContestManagerException {
+        BlobStore store = blobStore != null ? blobStore
+                : new BlobStore(contestsDir.resolve(".polygon2ejudge").resolve("blobs"));
+        log.info("Removing unreferenced blobs and compiled checkers");
+        try {
+            long freed = store.collectGarbage() + checkerCompiler.collectGarbage();
+            log.info(String.format("Freed %d bytes", freed));
+        } catch (IOException e) {
+            throw new ContestManagerException("failed to collect garbage", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        apiExecutor.shutdown();
+        packageDownloader.close();
+        if (ejudgeSession != null) {
+            ejudgeSession.close();
+            ejudgeSession = null;
         }
     }
 }
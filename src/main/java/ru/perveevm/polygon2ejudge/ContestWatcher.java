@@ -0,0 +1,101 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps ejudge contests in sync with Polygon. Every watched contest is polled with the contest problems list request,
+ * and packages lists are requested only for problems whose latest packaged revision differs from the imported one.
+ * Only problems with new packages are re-imported. The polling interval of a contest doubles each time nothing
+ * changes, up to the maximum, and drops back to the minimum after a change. Intervals are jittered so that contests
+ * watched together do not hit Polygon at the same moment.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ContestWatcher {
+    private static final double JITTER = 0.2;
+
+    private final Logger log = Logger.getLogger(ContestWatcher.class.getName());
+
+    private final ContestManager manager;
+    private final List<WatchedContest> contests;
+    private final long minIntervalSeconds;
+    private final long maxIntervalSeconds;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public ContestWatcher(final ContestManager manager, final List<WatchedContest> contests,
+                          final long minIntervalSeconds, final long maxIntervalSeconds) {
+        this.manager = manager;
+        this.contests = contests;
+        this.minIntervalSeconds = Math.max(1, minIntervalSeconds);
+        this.maxIntervalSeconds = Math.max(this.minIntervalSeconds, maxIntervalSeconds);
+    }
+
+    /**
+     * Polls the contests until the process is terminated. Synchronizations run one at a time.
+     */
+    public void run() throws InterruptedException {
+        for (WatchedContest contest : contests) {
+            log.info(String.format("Watching contest %d for %s", contest.polygonContestId(),
+                    contest.ejudgeContestIds()));
+            scheduler.execute(() -> poll(contest, minIntervalSeconds));
+        }
+        scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void poll(final WatchedContest contest, final long intervalSeconds) {
+        long nextIntervalSeconds = Math.min(maxIntervalSeconds, intervalSeconds * 2);
+        try {
+            Set<String> outdatedProblems = manager.findOutdatedProblems(contest.polygonContestId(),
+                    contest.ejudgeContestIds());
+            if (!outdatedProblems.isEmpty()) {
+                log.info(String.format("Contest %d: new packages of %s", contest.polygonContestId(),
+                        String.join(", ", outdatedProblems)));
+                boolean changed = false;
+                for (int ejudgeContestId : contest.ejudgeContestIds()) {
+                    changed |= manager.syncProblems(contest.polygonContestId(), ejudgeContestId, outdatedProblems);
+                }
+                if (changed) {
+                    nextIntervalSeconds = minIntervalSeconds;
+                }
+            }
+        } catch (ContestManagerException | RuntimeException e) {
+            log.warning(String.format("Failed to synchronize contest %d (%s)", contest.polygonContestId(),
+                    e.getMessage()));
+        }
+
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        long delayMillis = Math.round(nextIntervalSeconds * 1000 * jitter);
+        log.fine(String.format("Contest %d: next poll in %d ms", contest.polygonContestId(), delayMillis));
+        long interval = nextIntervalSeconds;
+        scheduler.schedule(() -> poll(contest, interval), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Polygon contest and the ejudge contests it is imported to.
+     */
+    public record WatchedContest(int polygonContestId, List<Integer> ejudgeContestIds) {
+        /**
+         * Parses a mapping in the form {@code <polygon contest id>:<ejudge contest id>[,<ejudge contest id>...]}.
+         */
+        public static WatchedContest parse(final String mapping) {
+            String[] parts = mapping.split(":");
+            if (parts.length != 2 || parts[1].isEmpty()) {
+                throw new IllegalArgumentException(String.format("invalid contest mapping %s, expected "
+                        + "<polygon contest id>:<ejudge contest id>[,<ejudge contest id>...]", mapping));
+            }
+            return new WatchedContest(Integer.parseInt(parts[0].strip()), Arrays.stream(parts[1].split(","))
+                    .map(String::strip)
+                    .map(Integer::valueOf)
+                    .toList());
+        }
+    }
+}
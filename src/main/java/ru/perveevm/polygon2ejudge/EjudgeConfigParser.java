@@ -4,18 +4,35 @@ import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Mike Perveev (perveev_m@mail.ru)
  */
 public class EjudgeConfigParser {
-    private String prefix;
-    private final List<String> problems = new ArrayList<>();
+    /**
+     * Sections in file order: {@link ProblemSection} objects and the raw text of all other sections. The text before
+     * the first section is kept as a raw section too.
+     */
+    private final List<Object> sections = new ArrayList<>();
+    private final List<ProblemSection> problems = new ArrayList<>();
+    private final Map<Integer, ProblemSection> problemsById = new HashMap<>();
+    private final Map<String, ProblemSection> problemsByInternalName = new HashMap<>();
+    private final Map<String, ProblemSection> problemsByShortName = new HashMap<>();
+    /**
+     * Position in {@link #sections} where new problems are inserted, right after the last problem.
+     */
+    private int problemsEnd;
 
     public EjudgeConfigParser() {
     }
@@ -26,125 +43,222 @@ public class EjudgeConfigParser {
             lines = reader.lines().toList();
         }
 
+        clearProblems();
+        sections.clear();
         StringBuilder configPrefix = new StringBuilder();
         int row = 0;
-        while (row < lines.size()) {
-            if (lines.get(row).strip().startsWith("[problem]")) {
-                prefix = configPrefix.toString();
-                break;
-            }
+        while (row < lines.size() && !isSectionHeader(lines.get(row))) {
             configPrefix.append(lines.get(row)).append(System.lineSeparator());
             row++;
         }
-        if (row == lines.size()) {
-            prefix = configPrefix.toString();
-        }
+        sections.add(configPrefix.toString());
 
-        problems.clear();
         while (row < lines.size()) {
-            if (lines.get(row).strip().startsWith("[tester]")) {
-                break;
-            }
-
-            StringBuilder currentProblem = new StringBuilder();
+            StringBuilder currentSection = new StringBuilder();
             do {
-                currentProblem.append(lines.get(row)).append(System.lineSeparator());
+                currentSection.append(lines.get(row)).append(System.lineSeparator());
                 row++;
-            } while (row != lines.size() && !lines.get(row).strip().startsWith("[problem]"));
-            problems.add(currentProblem.toString());
+            } while (row != lines.size() && !isSectionHeader(lines.get(row)));
+
+            if (isProblemHeader(currentSection.toString())) {
+                ProblemSection section = new ProblemSection(currentSection.toString());
+                sections.add(section);
+                problems.add(section);
+                index(section);
+                problemsEnd = sections.size();
+            } else {
+                sections.add(currentSection.toString());
+            }
+        }
+        if (problems.isEmpty()) {
+            problemsEnd = sections.size();
         }
     }
 
-    public List<String> getProblems() {
-        return problems;
+    private static boolean isSectionHeader(final String line) {
+        return line.strip().startsWith("[");
     }
 
-    public void removeProblemById(final int id) throws ContestManagerException {
-        for (int i = 0; i < problems.size(); i++) {
-            String problemConfig = problems.get(i);
-            String currentId = getArgumentValue(problemConfig, "id");
-            if (currentId == null) {
-                throw new ContestManagerException("id is null for some of the problems");
-            }
+    private static boolean isProblemHeader(final String line) {
+        return line.strip().startsWith("[problem]");
+    }
 
-            if (Integer.parseInt(currentId) == id) {
-                problems.remove(i);
-                return;
-            }
+    private void index(final ProblemSection section) {
+        if (section.getId() != null) {
+            problemsById.putIfAbsent(section.getId(), section);
         }
+        if (section.getInternalName() != null) {
+            problemsByInternalName.putIfAbsent(section.getInternalName(), section);
+        }
+        if (section.getShortName() != null) {
+            problemsByShortName.putIfAbsent(section.getShortName(), section);
+        }
+    }
 
-        throw new ContestManagerException(String.format("problem with id %d not found", id));
+    private void unindex(final ProblemSection section) {
+        if (section.getId() != null) {
+            problemsById.remove(section.getId(), section);
+        }
+        if (section.getInternalName() != null) {
+            problemsByInternalName.remove(section.getInternalName(), section);
+        }
+        if (section.getShortName() != null) {
+            problemsByShortName.remove(section.getShortName(), section);
+        }
     }
 
-    public String getProblemInternalNameById(final int id) throws ContestManagerException {
-        for (String problemConfig : problems) {
-            String currentName = getArgumentValue(problemConfig, "internal_name");
-            String currentId = getArgumentValue(problemConfig, "id");
-            if (currentName == null || currentId == null) {
-                throw new ContestManagerException("internal_name or id is null for some of the problems");
-            }
+    public List<ProblemSection> getProblems() {
+        return List.copyOf(problems);
+    }
 
-            if (Integer.parseInt(currentId) == id) {
-                return currentName;
-            }
+    /**
+     * Adds a problem after the last problem section, or at the end of the config if there are no problems.
+     */
+    public void addProblem(final String config) {
+        ProblemSection section = new ProblemSection(config);
+        sections.add(problemsEnd++, section);
+        problems.add(section);
+        index(section);
+    }
+
+    /**
+     * Removes all problem sections. Problems added afterwards take the place of the first removed one.
+     */
+    public void clearProblems() {
+        if (!problems.isEmpty()) {
+            problemsEnd = sections.indexOf(problems.get(0));
+            sections.removeIf(section -> section instanceof ProblemSection);
+        }
+        problems.clear();
+        problemsById.clear();
+        problemsByInternalName.clear();
+        problemsByShortName.clear();
+    }
+
+    private ProblemSection getProblemById(final int id) throws ContestManagerException {
+        ProblemSection section = problemsById.get(id);
+        if (section == null) {
+            throw new ContestManagerException(String.format("problem with id %d not found", id));
         }
+        return section;
+    }
 
-        throw new ContestManagerException(String.format("problem internal_name not found for problem %d", id));
+    public void removeProblemById(final int id) throws ContestManagerException {
+        ProblemSection section = getProblemById(id);
+        int position = sections.indexOf(section);
+        sections.remove(position);
+        if (position < problemsEnd) {
+            problemsEnd--;
+        }
+        problems.remove(section);
+        unindex(section);
     }
 
-    public int getProblemIdByInternalName(final String internalName) throws ContestManagerException {
-        for (String problemConfig : problems) {
-            String currentName = getArgumentValue(problemConfig, "internal_name");
-            String currentId = getArgumentValue(problemConfig, "id");
-            if (currentName == null || currentId == null) {
-                throw new ContestManagerException("internal_name or id is null for some of the problems");
-            }
+    public void replaceProblemById(final int id, final String config) throws ContestManagerException {
+        ProblemSection section = getProblemById(id);
+        ProblemSection replacement = new ProblemSection(config);
+        sections.set(sections.indexOf(section), replacement);
+        problems.set(problems.indexOf(section), replacement);
+        unindex(section);
+        index(replacement);
+    }
 
-            if (internalName.equals(currentName)) {
-                return Integer.parseInt(currentId);
-            }
+    public Integer findProblemIdByInternalName(final String internalName) {
+        ProblemSection section = problemsByInternalName.get(internalName);
+        return section == null ? null : section.getId();
+    }
+
+    public int getMaxProblemId() {
+        int maxId = 0;
+        for (int id : problemsById.keySet()) {
+            maxId = Math.max(maxId, id);
         }
+        return maxId;
+    }
 
-        throw new ContestManagerException(String.format("problem id not found for problem %s", internalName));
+    public String getProblemArgumentById(final int id, final String argumentName) throws ContestManagerException {
+        return getProblemById(id).getArgument(argumentName);
     }
 
-    private String getArgumentValue(final String problemConfig, final String argumentName) {
-        String[] lines = problemConfig.split(System.lineSeparator());
-        for (String line : lines) {
-            if (getArgumentName(line).equals(argumentName)) {
-                return getArgumentValue(line);
-            }
+    public String getProblemInternalNameById(final int id) throws ContestManagerException {
+        String internalName = problemsById.containsKey(id) ? problemsById.get(id).getInternalName() : null;
+        if (internalName == null) {
+            throw new ContestManagerException(String.format("problem internal_name not found for problem %d", id));
         }
-        return null;
+        return internalName;
     }
 
-    private String getArgumentName(final String line) {
-        if (line.contains("=")) {
-            return line.substring(0, line.indexOf("=")).strip();
-        } else {
-            return line.strip();
+    public int getProblemIdByInternalName(final String internalName) throws ContestManagerException {
+        Integer id = findProblemIdByInternalName(internalName);
+        if (id == null) {
+            throw new ContestManagerException(String.format("problem id not found for problem %s", internalName));
         }
+        return id;
     }
 
-    private String getArgumentValue(final String line) {
-        if (line.contains("=")) {
-            String value = line.substring(line.indexOf("=") + 1).strip();
-            if (value.startsWith("\"")) {
-                return value.substring(value.indexOf("\"") + 1, value.lastIndexOf("\""));
-            } else {
-                return value;
+    public int getProblemIdByShortName(final String shortName) throws ContestManagerException {
+        ProblemSection section = problemsByShortName.get(shortName);
+        if (section == null || section.getId() == null) {
+            throw new ContestManagerException(String.format("problem id not found for problem %s", shortName));
+        }
+        return section.getId();
+    }
+
+    /**
+     * Atomically replaces the file at {@code configPath} with the current config. The config is written to a
+     * temporary file next to it, synced to disk and renamed over the original file.
+     */
+    public void write(final Path configPath) throws IOException {
+        Path directory = configPath.toAbsolutePath().getParent();
+        Path tmpPath = Files.createTempFile(directory, configPath.getFileName().toString(), ".tmp");
+        try {
+            if (Files.exists(configPath)) {
+                try {
+                    Files.setPosixFilePermissions(tmpPath, Files.getPosixFilePermissions(configPath));
+                } catch (UnsupportedOperationException ignored) {
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(toString());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
             }
-        } else {
-            return null;
+            Files.move(tmpPath, configPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
         }
     }
 
+    private static void appendSection(final StringBuilder result, final String section) {
+        String blankLine = System.lineSeparator() + System.lineSeparator();
+        int tailStart = result.length() - blankLine.length();
+        if (!result.isEmpty() && !section.isEmpty()
+                && (tailStart < 0 || !result.substring(tailStart).equals(blankLine))) {
+            result.append(System.lineSeparator());
+        }
+        result.append(section);
+    }
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        result.append(prefix);
-        for (String problem : problems) {
-            result.append(System.lineSeparator()).append(problem);
+        Object previous = null;
+        for (Object section : sections) {
+            if (section instanceof ProblemSection || previous instanceof ProblemSection) {
+                appendSection(result, section.toString());
+            } else {
+                result.append(section);
+            }
+            previous = section;
         }
         return result.toString();
     }
@@ -1,43 +1,64 @@
 package ru.perveevm.polygon2ejudge;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import ru.perveevm.polygon2ejudge.exceptions.EjudgeSessionException;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Mike Perveev (perveev_m@mail.ru)
  */
-public class EjudgeSession {
+public class EjudgeSession implements Closeable {
+    public static final int UNKNOWN_RUN_ID = -1;
+
+    private static final int MAX_CONNECTIONS = 16;
+    private static final String INVALID_SESSION_ERROR = "ERR_INV_SID";
+
     private final String login;
     private final String password;
     private final String cgiBinUrl;
 
-    private CloseableHttpClient client = HttpClients.createDefault();
-
-    private String sid;
-
-    private static final Map<String, Integer> extensionToLangId = Map.of(
+    private final CloseableHttpClient client;
+    private final Map<Integer, String> sids = new ConcurrentHashMap<>();
+    private final Map<String, Integer> extensionToLangId = new HashMap<>(Map.of(
             "cpp", 3,
             "py", 23,
             "java", 18,
             "pas", 1
-    );
+    ));
 
     public EjudgeSession() throws EjudgeSessionException {
         try (InputStream in = ContestManager.class.getClassLoader().getResourceAsStream("app.properties")) {
@@ -47,13 +68,23 @@ public class EjudgeSession {
             login = properties.getProperty("ejudge.login");
             password = properties.getProperty("ejudge.password");
             cgiBinUrl = properties.getProperty("ejudge.cgiBinUrl");
-        } catch (IOException e) {
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith("ejudge.lang.")) {
+                    extensionToLangId.put(name.substring("ejudge.lang.".length()),
+                            Integer.parseInt(properties.getProperty(name).strip()));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
             throw new EjudgeSessionException("failed to load properties", e);
         }
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        client = HttpClients.custom().setConnectionManager(connectionManager).build();
     }
 
-    private void authenticate(final int contestId) throws IOException, URISyntaxException, EjudgeSessionException {
-        client = HttpClients.createDefault();
+    private String authenticate(final int contestId) throws IOException, URISyntaxException, EjudgeSessionException {
         HttpPost request = new HttpPost(cgiBinUrl + "/new-master");
         List<NameValuePair> parameters = List.of(
                 new BasicNameValuePair("action_2", "Submit"),
@@ -64,7 +95,25 @@ public class EjudgeSession {
                 new BasicNameValuePair("role", "6")
         );
         request.setEntity(new UrlEncodedFormEntity(parameters, StandardCharsets.UTF_8));
-        HttpResponse response = client.execute(request);
+        try (CloseableHttpResponse response = client.execute(request)) {
+            EntityUtils.consume(response.getEntity());
+            checkServerError(response);
+            String sid = getRedirectSid(response);
+            if (sid == null) {
+                throw new EjudgeSessionException("could not parse SID");
+            }
+            return sid;
+        }
+    }
+
+    private void checkServerError(final HttpResponse response) throws HttpResponseException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            throw new HttpResponseException(statusCode, response.getStatusLine().getReasonPhrase());
+        }
+    }
+
+    private String getRedirectSid(final HttpResponse response) throws URISyntaxException {
         Header[] headers = response.getAllHeaders();
         for (Header header : headers) {
             if (header.getName().equals("Location")) {
@@ -72,45 +121,163 @@ public class EjudgeSession {
                         new URI(header.getValue()), StandardCharsets.UTF_8);
                 for (NameValuePair pair : responseParameters) {
                     if (pair.getName().equals("SID")) {
-                        sid = pair.getValue();
-                        return;
+                        return pair.getValue();
                     }
                 }
             }
         }
-
-        throw new EjudgeSessionException("could not parse SID");
+        return null;
     }
 
-    public void submitSolution(final int contestId, final String source, final int problemId, final String extension)
-            throws EjudgeSessionException {
+    private String getSid(final int contestId) throws EjudgeSessionException {
+        String sid = sids.get(contestId);
+        if (sid != null) {
+            return sid;
+        }
+
         try {
-            authenticate(contestId);
+            sid = authenticate(contestId);
         } catch (IOException | URISyntaxException e) {
             throw new EjudgeSessionException("failed to authenticate", e);
         }
+        sids.put(contestId, sid);
+        return sid;
+    }
 
+    public boolean isSupported(final String extension) {
+        return extensionToLangId.containsKey(extension);
+    }
+
+    /**
+     * Uploads the solution file as is and returns its run id, or {@link #UNKNOWN_RUN_ID} if ejudge accepted the run
+     * without reporting its id. The file is streamed from disk, so its size is not limited by memory.
+     */
+    public int submitSolution(final int contestId, final Path source, final int problemId, final String extension)
+            throws EjudgeSessionException {
         Integer langId = extensionToLangId.getOrDefault(extension, null);
         if (langId == null) {
-            return;
+            throw new EjudgeSessionException(String.format("extension %s is not supported", extension));
         }
 
+        String sid = getSid(contestId);
+        Integer runId = trySubmitSolution(sid, source, problemId, langId);
+        if (runId == null) {
+            sids.remove(contestId, sid);
+            runId = trySubmitSolution(getSid(contestId), source, problemId, langId);
+            if (runId == null) {
+                throw new EjudgeSessionException("submission was rejected, new SID is not accepted");
+            }
+        }
+        return runId;
+    }
+
+    private Integer trySubmitSolution(final String sid, final Path source, final int problemId, final int langId)
+            throws EjudgeSessionException {
         HttpPost request = new HttpPost(cgiBinUrl + "/new-master");
-        List<NameValuePair> parameters = List.of(
-                new BasicNameValuePair("SID", sid),
-                new BasicNameValuePair("action_40", "Send!"),
-                new BasicNameValuePair("eoln_type", "0"),
-                new BasicNameValuePair("file", ""),
-                new BasicNameValuePair("lang_id", String.valueOf(langId)),
-                new BasicNameValuePair("problem", String.valueOf(problemId)),
-                new BasicNameValuePair("text_form", source)
-        );
-        request.setEntity(new UrlEncodedFormEntity(parameters, StandardCharsets.UTF_8));
+        request.setEntity(MultipartEntityBuilder.create()
+                .setMode(HttpMultipartMode.RFC6532)
+                .setCharset(StandardCharsets.UTF_8)
+                .addTextBody("SID", sid)
+                .addTextBody("action_40", "Send!")
+                .addTextBody("eoln_type", "0")
+                .addTextBody("json", "1")
+                .addTextBody("lang_id", String.valueOf(langId))
+                .addTextBody("problem", String.valueOf(problemId))
+                .addBinaryBody("file", source.toFile(), ContentType.APPLICATION_OCTET_STREAM,
+                        source.getFileName().toString())
+                .build());
 
-        try {
-            client.execute(request);
-        } catch (IOException e) {
+        try (CloseableHttpResponse response = client.execute(request)) {
+            String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+            checkServerError(response);
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_MOVED_TEMPORARILY) {
+                if (getRedirectSid(response) == null) {
+                    throw new EjudgeSessionException("submission was redirected to an unexpected page");
+                }
+                return UNKNOWN_RUN_ID;
+            }
+
+            JsonObject result = getJsonResult(body);
+            return result == null ? null : result.get("run_id").getAsInt();
+        } catch (IOException | URISyntaxException | RuntimeException e) {
             throw new EjudgeSessionException("failed to submit solution", e);
         }
     }
+
+    /**
+     * Returns short statuses (such as {@code OK} or {@code WA}) of all runs with ids in the given range.
+     */
+    public Map<Integer, String> getRunStatuses(final int contestId, final int firstRunId, final int lastRunId)
+            throws EjudgeSessionException {
+        String sid = getSid(contestId);
+        Map<Integer, String> statuses = tryGetRunStatuses(sid, firstRunId, lastRunId);
+        if (statuses == null) {
+            sids.remove(contestId, sid);
+            statuses = tryGetRunStatuses(getSid(contestId), firstRunId, lastRunId);
+            if (statuses == null) {
+                throw new EjudgeSessionException("runs list request was rejected, new SID is not accepted");
+            }
+        }
+        return statuses;
+    }
+
+    private Map<Integer, String> tryGetRunStatuses(final String sid, final int firstRunId, final int lastRunId)
+            throws EjudgeSessionException {
+        try {
+            URI uri = new URIBuilder(cgiBinUrl + "/new-master")
+                    .addParameter("SID", sid)
+                    .addParameter("action", "list-runs-json")
+                    .addParameter("filter_expr", String.format("id >= %d && id <= %d", firstRunId, lastRunId))
+                    .addParameter("first_run", String.valueOf(firstRunId))
+                    .addParameter("last_run", String.valueOf(lastRunId))
+                    .build();
+            try (CloseableHttpResponse response = client.execute(new HttpGet(uri))) {
+                String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+                checkServerError(response);
+
+                JsonObject result = getJsonResult(body);
+                if (result == null) {
+                    return null;
+                }
+
+                Map<Integer, String> statuses = new HashMap<>();
+                for (JsonElement run : result.getAsJsonArray("runs")) {
+                    JsonObject runObject = run.getAsJsonObject();
+                    statuses.put(runObject.get("run_id").getAsInt(), runObject.get("status_str").getAsString());
+                }
+                return statuses;
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            throw new EjudgeSessionException("failed to load runs list", e);
+        }
+    }
+
+    /**
+     * Returns the result of a JSON reply, or {@code null} if ejudge does not accept the SID and the request should be
+     * repeated with a new one. Any other error is reported with the message given by ejudge.
+     */
+    private JsonObject getJsonResult(final String body) throws EjudgeSessionException {
+        JsonObject reply;
+        try {
+            reply = JsonParser.parseString(body).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new EjudgeSessionException("ejudge returned a reply that is not JSON", e);
+        }
+        if (reply.has("ok") && reply.get("ok").getAsBoolean()) {
+            return reply.getAsJsonObject("result");
+        }
+
+        JsonObject error = reply.has("error") && reply.get("error").isJsonObject()
+                ? reply.getAsJsonObject("error") : new JsonObject();
+        if (error.has("symbol") && error.get("symbol").getAsString().endsWith(INVALID_SESSION_ERROR)) {
+            return null;
+        }
+        String message = error.has("message") ? error.get("message").getAsString() : "unknown error";
+        throw new EjudgeSessionException(String.format("request was rejected: %s", message));
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
 }
@@ -0,0 +1,145 @@
+package ru.perveevm.polygon2ejudge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-ahead journal of a contest import. Every record is flushed to disk before the import moves on, so an import
+ * interrupted at any point can be resumed: finished problems are taken from the journal instead of being imported
+ * again. A torn record at the end of the journal, left by a crash during the write, is discarded.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ImportJournal {
+    private static final String JOB = "job";
+    private static final String PROBLEM = "problem";
+    private static final String WRITTEN = "written";
+
+    private final Path path;
+    private final String job;
+    private final Map<Integer, ProblemRecord> problems = new HashMap<>();
+    private boolean written;
+
+    private ImportJournal(final Path path, final String job) {
+        this.path = path;
+        this.job = job;
+    }
+
+    /**
+     * Opens an existing journal, or starts a new one for {@code job} if there is none. The job of an existing journal
+     * may differ from the requested one, check {@link #getJob()}.
+     */
+    public static ImportJournal open(final Path path, final String job) throws IOException {
+        if (!Files.exists(path)) {
+            ImportJournal journal = new ImportJournal(path, job);
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            journal.append(JOB + " " + encode(job));
+            return journal;
+        }
+
+        byte[] content = Files.readAllBytes(path);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+        }
+
+        List<String> lines = new String(content, 0, end, StandardCharsets.UTF_8).lines().toList();
+        ImportJournal journal = null;
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            try {
+                if (journal == null) {
+                    if (parts.length != 2 || !parts[0].equals(JOB)) {
+                        throw new IOException(String.format("%s is not an import journal", path));
+                    }
+                    journal = new ImportJournal(path, decode(parts[1]));
+                } else if (parts.length == 4 && parts[0].equals(PROBLEM)) {
+                    int problemId = Integer.parseInt(parts[1]);
+                    journal.problems.put(problemId, new ProblemRecord(decode(parts[2]), decode(parts[3])));
+                } else if (parts.length == 1 && parts[0].equals(WRITTEN)) {
+                    journal.written = true;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(String.format("%s is corrupted", path), e);
+            }
+        }
+        if (journal == null) {
+            throw new IOException(String.format("%s is empty", path));
+        }
+        return journal;
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    /**
+     * Returns config of the problem if it was fully imported under the given id and name, otherwise {@code null}.
+     */
+    public synchronized String getProblemConfig(final int problemId, final String problemName) {
+        ProblemRecord record = problems.get(problemId);
+        return record != null && record.name().equals(problemName) ? record.config() : null;
+    }
+
+    public synchronized void problemDone(final int problemId, final String problemName, final String config)
+            throws IOException {
+        append(String.join(" ", PROBLEM, String.valueOf(problemId), encode(problemName), encode(config)));
+        problems.put(problemId, new ProblemRecord(problemName, config));
+    }
+
+    /**
+     * Returns whether serve.cfg files were already written by this import.
+     */
+    public synchronized boolean isWritten() {
+        return written;
+    }
+
+    public synchronized void configWritten() throws IOException {
+        append(WRITTEN);
+        written = true;
+    }
+
+    /**
+     * Deletes the journal once the import is complete.
+     */
+    public void finish() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private void append(final String record) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static String encode(final String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(final String value) {
+        return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    private record ProblemRecord(String name, String config) {
+    }
+}
@@ -2,12 +2,20 @@ package ru.perveevm.polygon2ejudge;
 
 import picocli.CommandLine;
 import ru.perveevm.polygon2ejudge.cli.Commands;
+import ru.perveevm.polygon2ejudge.cli.DaemonClient;
 
 /**
  * @author Mike Perveev (perveev_m@mail.ru)
  */
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && !args[0].equals("daemon") && !args[0].equals("watch")) {
+            Integer rc = DaemonClient.tryForward(args);
+            if (rc != null) {
+                System.exit(rc);
+            }
+        }
+
         int rc = new CommandLine(new Commands()).execute(args);
         System.exit(rc);
     }
@@ -0,0 +1,171 @@
+package ru.perveevm.polygon2ejudge;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wall time, bytes and file counts per phase of a single run. Phases running on several threads at once are summed,
+ * so the time of a phase may exceed the duration of the whole run.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class Metrics {
+    public enum Phase {
+        API, DOWNLOAD, EXTRACTION, MOVES, COMPILATION, CONFIG, STATEMENT, SUBMISSION;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Map<Phase, Counters> phases = new EnumMap<>(Phase.class);
+
+    public Metrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new Counters());
+        }
+    }
+
+    /**
+     * Starts timing one operation of the phase. The operation is recorded when {@link Timer#stop} is called.
+     */
+    public Timer start(final Phase phase) {
+        return new Timer(phase, System.nanoTime());
+    }
+
+    public void record(final Phase phase, final long nanos, final long bytes, final long files) {
+        Counters counters = phases.get(phase);
+        counters.nanos.add(nanos);
+        counters.bytes.add(bytes);
+        counters.files.add(files);
+        counters.operations.increment();
+    }
+
+    public String summary() {
+        StringBuilder result = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            Counters counters = phases.get(phase);
+            if (counters.operations.sum() == 0) {
+                continue;
+            }
+            if (!result.isEmpty()) {
+                result.append(", ");
+            }
+            result.append(String.format(Locale.ROOT, "%s %.2f s (%d bytes, %d files)", phase.label(),
+                    counters.nanos.sum() / 1e9, counters.bytes.sum(), counters.files.sum()));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes {@code polygon2ejudge-<command>.json} and {@code polygon2ejudge-<command>.prom} to {@code directory}.
+     * Both files are replaced atomically, as required by the node_exporter textfile collector.
+     */
+    public void write(final Path directory, final String command) throws IOException {
+        double runSeconds = (System.nanoTime() - startNanos) / 1e9;
+        long timestamp = System.currentTimeMillis() / 1000;
+
+        JsonObject report = new JsonObject();
+        report.addProperty("command", command);
+        report.addProperty("timestamp", timestamp);
+        report.addProperty("seconds", runSeconds);
+        JsonObject phasesReport = new JsonObject();
+        for (Phase phase : Phase.values()) {
+            Counters counters = phases.get(phase);
+            JsonObject phaseReport = new JsonObject();
+            phaseReport.addProperty("seconds", counters.nanos.sum() / 1e9);
+            phaseReport.addProperty("bytes", counters.bytes.sum());
+            phaseReport.addProperty("files", counters.files.sum());
+            phaseReport.addProperty("operations", counters.operations.sum());
+            phasesReport.add(phase.label(), phaseReport);
+        }
+        report.add("phases", phasesReport);
+
+        StringBuilder prometheus = new StringBuilder();
+        appendMetric(prometheus, "polygon2ejudge_run_seconds", "Duration of the last run.",
+                String.format("{command=\"%s\"}", command), runSeconds);
+        appendMetric(prometheus, "polygon2ejudge_run_timestamp_seconds", "Unix time of the end of the last run.",
+                String.format("{command=\"%s\"}", command), timestamp);
+        appendPhaseMetric(prometheus, command, "seconds", "Wall time spent in the phase, summed over threads.",
+                counters -> counters.nanos.sum() / 1e9);
+        appendPhaseMetric(prometheus, command, "bytes", "Bytes processed in the phase.",
+                counters -> counters.bytes.sum());
+        appendPhaseMetric(prometheus, command, "files", "Files processed in the phase.",
+                counters -> counters.files.sum());
+        appendPhaseMetric(prometheus, command, "operations", "Operations timed in the phase.",
+                counters -> counters.operations.sum());
+
+        Files.createDirectories(directory);
+        String name = "polygon2ejudge-" + command;
+        writeAtomically(directory.resolve(name + ".json"),
+                new GsonBuilder().setPrettyPrinting().create().toJson(report));
+        writeAtomically(directory.resolve(name + ".prom"), prometheus.toString());
+    }
+
+    private void appendPhaseMetric(final StringBuilder result, final String command, final String unit,
+                                   final String help, final CounterValue value) {
+        String name = "polygon2ejudge_phase_" + unit;
+        result.append(String.format("# HELP %s %s%n# TYPE %s gauge%n", name, help, name));
+        for (Phase phase : Phase.values()) {
+            result.append(String.format(Locale.ROOT, "%s{command=\"%s\",phase=\"%s\"} %s%n", name, command,
+                    phase.label(), formatValue(value.get(phases.get(phase)))));
+        }
+    }
+
+    private static void appendMetric(final StringBuilder result, final String name, final String help,
+                                     final String labels, final double value) {
+        result.append(String.format("# HELP %s %s%n# TYPE %s gauge%n", name, help, name));
+        result.append(String.format("%s%s %s%n", name, labels, formatValue(value)));
+    }
+
+    private static String formatValue(final double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static void writeAtomically(final Path path, final String content) throws IOException {
+        Path tmpPath = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+        try {
+            Files.writeString(tmpPath, content, StandardCharsets.UTF_8);
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    public class Timer {
+        private final Phase phase;
+        private final long startNanos;
+
+        private Timer(final Phase phase, final long startNanos) {
+            this.phase = phase;
+            this.startNanos = startNanos;
+        }
+
+        public void stop(final long bytes, final long files) {
+            record(phase, System.nanoTime() - startNanos, bytes, files);
+        }
+    }
+
+    private static class Counters {
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder files = new LongAdder();
+        private final LongAdder operations = new LongAdder();
+    }
+
+    @FunctionalInterface
+    private interface CounterValue {
+        double get(Counters counters);
+    }
+}
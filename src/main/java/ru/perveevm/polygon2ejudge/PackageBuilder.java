@@ -0,0 +1,102 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon.api.entities.Problem;
+import ru.perveevm.polygon.api.entities.ProblemPackage;
+import ru.perveevm.polygon.api.entities.enums.PackageState;
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Makes sure that problems have a READY package of their latest revision, building missing packages in Polygon.
+ * Builds of different problems run at the same time and are polled without blocking threads, with the polling
+ * interval doubling up to a maximum.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class PackageBuilder {
+    private static final long INITIAL_POLL_DELAY_MILLIS = 2000;
+    private static final long MAX_POLL_DELAY_MILLIS = 60000;
+
+    private final Logger log = Logger.getLogger(PackageBuilder.class.getName());
+
+    private final Executor executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param executor      executor to run polls on
+     * @param timeoutMillis how long to wait for a single package build
+     */
+    public PackageBuilder(final Executor executor, final long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns a future that completes once the problem has a READY package of its latest revision. If there is no
+     * such package and none is being built, a full package build is started.
+     */
+    public CompletableFuture<Void> ensureReady(final ProblemMetadata metadata) {
+        Problem problem = metadata.getProblem();
+        return metadata.getPackagesAsync().thenCompose(packages -> {
+            if (findReadyPackage(problem, packages).isPresent()) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            CompletableFuture<Void> build;
+            if (findNewestPackage(problem, packages).filter(p -> p.getState() == PackageState.PENDING
+                    || p.getState() == PackageState.RUNNING).isPresent()) {
+                log.info(String.format("%s: waiting for package of revision %d", problem.getName(),
+                        problem.getRevision()));
+                build = CompletableFuture.completedFuture(null);
+            } else {
+                log.info(String.format("%s: building package of revision %d", problem.getName(),
+                        problem.getRevision()));
+                build = metadata.buildPackage();
+            }
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            return build.thenCompose(ignored -> poll(metadata, INITIAL_POLL_DELAY_MILLIS, deadline));
+        });
+    }
+
+    private CompletableFuture<Void> poll(final ProblemMetadata metadata, final long delayMillis, final long deadline) {
+        Problem problem = metadata.getProblem();
+        return CompletableFuture.runAsync(metadata::invalidatePackages,
+                        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor))
+                .thenCompose(ignored -> metadata.getPackagesAsync())
+                .thenCompose(packages -> {
+                    if (findReadyPackage(problem, packages).isPresent()) {
+                        log.info(String.format("%s: package is ready", problem.getName()));
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (findNewestPackage(problem, packages)
+                            .filter(p -> p.getState() == PackageState.FAILED).isPresent()) {
+                        throw new CompletionException(new ContestManagerException("package build failed"));
+                    }
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new CompletionException(new ContestManagerException(String.format(
+                                "package was not built in %d seconds", timeoutMillis / 1000)));
+                    }
+                    return poll(metadata, Math.min(MAX_POLL_DELAY_MILLIS, delayMillis * 2), deadline);
+                });
+    }
+
+    private static Optional<ProblemPackage> findReadyPackage(final Problem problem, final ProblemPackage[] packages) {
+        return Arrays.stream(packages)
+                .filter(p -> p.getState() == PackageState.READY && p.getRevision() >= problem.getRevision())
+                .findAny();
+    }
+
+    private static Optional<ProblemPackage> findNewestPackage(final Problem problem, final ProblemPackage[] packages) {
+        return Arrays.stream(packages)
+                .filter(p -> p.getRevision() >= problem.getRevision())
+                .max(Comparator.comparingInt(ProblemPackage::getId));
+    }
+}
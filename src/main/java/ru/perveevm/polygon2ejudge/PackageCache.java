@@ -0,0 +1,146 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon.exceptions.api.PolygonSessionException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of Polygon packages keyed by problem id and package id. Least recently used archives are evicted
+ * once the cache grows above its size limit.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class PackageCache {
+    private final Logger log = Logger.getLogger(PackageCache.class.getName());
+
+    private final Path directory;
+    private final long maxSize;
+    private final Set<Path> inUse = new HashSet<>();
+
+    public PackageCache(final Path directory, final long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns path to the cached package archive, downloading it first if it is not cached yet. The returned
+     * archive is protected from eviction until {@link #release(Path)} is called. A failed download leaves its
+     * partial file in the cache, so the next attempt can continue from where it stopped. A completed download is
+     * moved into place only after the checksums of all its entries match; otherwise the partial file is deleted.
+     */
+    public Path get(final int problemId, final int packageId, final PackageSource source)
+            throws IOException, PolygonSessionException {
+        Path packagePath = directory.resolve(String.format("%d-%d.zip", problemId, packageId));
+        synchronized (this) {
+            inUse.add(packagePath);
+        }
+
+        try {
+            if (Files.exists(packagePath)) {
+                try {
+                    PackageExtractor.verify(packagePath);
+                    log.info(String.format("Package #%d of problem %d is served from cache", packageId, problemId));
+                    Files.setLastModifiedTime(packagePath, FileTime.fromMillis(System.currentTimeMillis()));
+                    return packagePath;
+                } catch (IOException e) {
+                    log.warning(String.format("Cached package %s is corrupted, downloading it again (%s)",
+                            packagePath, e.getMessage()));
+                    Files.delete(packagePath);
+                }
+            }
+
+            Files.createDirectories(directory);
+            Path partPath = directory.resolve(packagePath.getFileName() + ".part");
+            synchronized (this) {
+                inUse.add(partPath);
+            }
+            try {
+                source.download(partPath);
+                try {
+                    PackageExtractor.verifyChecksums(partPath);
+                } catch (IOException e) {
+                    Files.deleteIfExists(partPath);
+                    throw e;
+                }
+                Files.move(partPath, packagePath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                synchronized (this) {
+                    inUse.remove(partPath);
+                }
+            }
+        } catch (IOException | PolygonSessionException | RuntimeException e) {
+            release(packagePath);
+            throw e;
+        }
+
+        trim();
+        return packagePath;
+    }
+
+    public void release(final Path packagePath) {
+        synchronized (this) {
+            inUse.remove(packagePath);
+        }
+        trim();
+    }
+
+    private synchronized void trim() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        List<Path> packages;
+        try (Stream<Path> files = Files.list(directory)) {
+            packages = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().endsWith(".zip")
+                            || p.getFileName().toString().endsWith(".zip.part"))
+                    .toList());
+        } catch (IOException e) {
+            log.warning(String.format("Failed to list package cache %s (%s)", directory, e.getMessage()));
+            return;
+        }
+
+        long totalSize = 0;
+        for (Path packagePath : packages) {
+            totalSize += packagePath.toFile().length();
+        }
+        packages.sort(Comparator.comparingLong(p -> p.toFile().lastModified()));
+
+        for (Path packagePath : packages) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            if (inUse.contains(packagePath)) {
+                continue;
+            }
+
+            long size = packagePath.toFile().length();
+            try {
+                Files.delete(packagePath);
+                totalSize -= size;
+            } catch (IOException e) {
+                log.warning(String.format("Failed to evict cached package %s (%s)", packagePath, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Downloads a package into {@code target}, continuing from the bytes already present there.
+     */
+    @FunctionalInterface
+    public interface PackageSource {
+        void download(Path target) throws IOException, PolygonSessionException;
+    }
+}
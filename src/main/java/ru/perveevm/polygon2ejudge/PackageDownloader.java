@@ -0,0 +1,232 @@
+package ru.perveevm.polygon2ejudge;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Downloads problem packages through the Polygon API directly into a partial file. Interrupted downloads are
+ * resumed with a {@code Range} request when the server supports it and restarted otherwise.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class PackageDownloader implements Closeable {
+    private static final int MAX_CONNECTIONS = 16;
+    private static final int SOCKET_TIMEOUT_MILLIS = 60000;
+
+    private final Logger log = Logger.getLogger(PackageDownloader.class.getName());
+
+    private final String apiUrl;
+    private final String key;
+    private final String secret;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+
+    private final CloseableHttpClient client;
+    private final SecureRandom random = new SecureRandom();
+
+    public PackageDownloader(final String apiUrl, final String key, final String secret, final int maxRetries,
+                             final long initialBackoffMillis) {
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl : apiUrl + "/";
+        this.key = key;
+        this.secret = secret;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(SOCKET_TIMEOUT_MILLIS).build())
+                .build();
+    }
+
+    /**
+     * Downloads package to {@code target}. Bytes already present in {@code target} are kept and only the rest of
+     * the archive is requested.
+     */
+    public void download(final int problemId, final int packageId, final Path target) throws IOException {
+        long backoffMillis = initialBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                tryDownload(problemId, packageId, target);
+                return;
+            } catch (IOException e) {
+                if (attempt == maxRetries || e instanceof PackageRejectedException) {
+                    throw e;
+                }
+                log.info(String.format("Download of package #%d of problem %d stopped at %d bytes, retrying in %d ms"
+                        + " (%s)", packageId, problemId, Files.exists(target) ? Files.size(target) : 0, backoffMillis,
+                        e.getMessage()));
+            }
+
+            try {
+                Thread.sleep(backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("package download was interrupted", e);
+            }
+            backoffMillis *= 2;
+        }
+    }
+
+    private void tryDownload(final int problemId, final int packageId, final Path target) throws IOException {
+        long offset = Files.exists(target) ? Files.size(target) : 0;
+
+        HttpPost request = new HttpPost(apiUrl + "problem.package");
+        request.setEntity(new UrlEncodedFormEntity(sign("problem.package", List.of(
+                new BasicNameValuePair("problemId", String.valueOf(problemId)),
+                new BasicNameValuePair("packageId", String.valueOf(packageId)),
+                new BasicNameValuePair("type", "linux")
+        )), StandardCharsets.UTF_8));
+        if (offset > 0) {
+            request.setHeader("Range", String.format("bytes=%d-", offset));
+        }
+
+        try (CloseableHttpResponse response = client.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                EntityUtils.consume(entity);
+                Files.deleteIfExists(target);
+                throw new IOException("partial package is larger than the package on the server");
+            }
+            if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+                String body = EntityUtils.toString(entity);
+                if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                    throw new HttpResponseException(statusCode, response.getStatusLine().getReasonPhrase());
+                }
+                throw new PackageRejectedException(String.format("Polygon returned %d: %s", statusCode, body));
+            }
+            if (ContentType.APPLICATION_JSON.getMimeType().equals(ContentType.getOrDefault(entity).getMimeType())) {
+                throw new PackageRejectedException(String.format("Polygon returned an error: %s",
+                        EntityUtils.toString(entity)));
+            }
+
+            boolean resumed = statusCode == HttpStatus.SC_PARTIAL_CONTENT;
+            Header contentRange = response.getFirstHeader("Content-Range");
+            if (resumed && getRangeStart(contentRange) != offset) {
+                EntityUtils.consume(entity);
+                Files.deleteIfExists(target);
+                throw new IOException(String.format("server returned a range other than requested (%s)",
+                        contentRange == null ? "no Content-Range" : contentRange.getValue()));
+            }
+            long expectedSize = getExpectedSize(contentRange, entity, resumed, offset);
+            if (offset > 0 && !resumed) {
+                log.info(String.format("Server does not support resuming, downloading package #%d of problem %d"
+                        + " from the beginning", packageId, problemId));
+            }
+
+            try (InputStream in = entity.getContent();
+                 OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         resumed ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                in.transferTo(out);
+            }
+
+            long size = Files.size(target);
+            if (expectedSize >= 0 && size != expectedSize) {
+                throw new IOException(String.format("package is truncated: got %d of %d bytes", size, expectedSize));
+            }
+        }
+    }
+
+    private static long getRangeStart(final Header contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        String value = contentRange.getValue().strip();
+        int start = value.indexOf(' ') + 1;
+        int end = value.indexOf('-', start);
+        try {
+            return end < 0 ? -1 : Long.parseLong(value.substring(start, end).strip());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long getExpectedSize(final Header contentRange, final HttpEntity entity, final boolean resumed,
+                                        final long offset) {
+        if (resumed && contentRange != null) {
+            String value = contentRange.getValue();
+            String total = value.substring(value.lastIndexOf('/') + 1).strip();
+            if (!total.equals("*")) {
+                return Long.parseLong(total);
+            }
+        }
+        if (entity.getContentLength() < 0) {
+            return -1;
+        }
+        return entity.getContentLength() + (resumed ? offset : 0);
+    }
+
+    /**
+     * Signs an API call as described in the Polygon API documentation, the same way polygon-api does.
+     */
+    private List<NameValuePair> sign(final String method, final List<NameValuePair> parameters) {
+        List<NameValuePair> signed = new ArrayList<>(parameters);
+        signed.add(new BasicNameValuePair("apiKey", key));
+        signed.add(new BasicNameValuePair("time", String.valueOf(System.currentTimeMillis() / 1000)));
+        signed.sort(Comparator.comparing(NameValuePair::getName).thenComparing(NameValuePair::getValue));
+
+        String rand = String.format("%06d", random.nextInt(1000000));
+        String toHash = String.format("%s/%s?%s#%s", rand, method, signed.stream()
+                .map(p -> p.getName() + "=" + p.getValue())
+                .collect(Collectors.joining("&")), secret);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        signed.add(new BasicNameValuePair("apiSig",
+                rand + HexFormat.of().formatHex(digest.digest(toHash.getBytes(StandardCharsets.UTF_8)))));
+        return signed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    /**
+     * Polygon refused to return the package, so retrying will not help.
+     */
+    private static class PackageRejectedException extends IOException {
+        PackageRejectedException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ru.perveevm.polygon2ejudge;
+
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.io.inputstream.ZipInputStream;
+import net.lingala.zip4j.model.FileHeader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Streams selected entries of a package archive directly to their destinations, skipping everything else.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class PackageExtractor implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ZipFile zipFile;
+    private final Map<String, List<Path>> files = new LinkedHashMap<>();
+    private final List<DirectoryRule> directories = new ArrayList<>();
+    private long extractedBytes;
+
+    public PackageExtractor(final Path archivePath) {
+        zipFile = new ZipFile(archivePath.toFile());
+    }
+
+    /**
+     * Checks that the archive is complete: the central directory is readable and every entry lies within the file.
+     */
+    public static void verify(final Path archivePath) throws IOException {
+        long size = Files.size(archivePath);
+        try (ZipFile zipFile = new ZipFile(archivePath.toFile())) {
+            if (!zipFile.isValidZipFile()) {
+                throw new ZipException(String.format("%s is not a valid zip archive", archivePath));
+            }
+            for (FileHeader header : zipFile.getFileHeaders()) {
+                if (header.getOffsetLocalHeader() + header.getCompressedSize() > size) {
+                    throw new ZipException(String.format("entry %s of %s is truncated", header.getFileName(),
+                            archivePath));
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the archive with {@link #verify(Path)} and then reads every entry, comparing its CRC-32 with the one
+     * recorded in the archive. Used for freshly downloaded packages, whose bytes may have been corrupted in transit
+     * or appended to a stale partial file.
+     */
+    public static void verifyChecksums(final Path archivePath) throws IOException {
+        verify(archivePath);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile zipFile = new ZipFile(archivePath.toFile())) {
+            for (FileHeader header : zipFile.getFileHeaders()) {
+                if (header.isDirectory()) {
+                    continue;
+                }
+
+                CRC32 crc = new CRC32();
+                try (ZipInputStream in = zipFile.getInputStream(header)) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        crc.update(buffer, 0, read);
+                    }
+                }
+                if (crc.getValue() != header.getCrc()) {
+                    throw new ZipException(String.format("entry %s of %s has wrong checksum", header.getFileName(),
+                            archivePath));
+                }
+            }
+        }
+    }
+
+    public boolean contains(final String entryName) throws IOException {
+        return zipFile.getFileHeader(entryName) != null;
+    }
+
+    /**
+     * Registers a single entry that must be present in the archive. The same entry may be registered several times
+     * to place it into several locations.
+     */
+    public void addFile(final String entryName, final Path target) {
+        files.computeIfAbsent(entryName, name -> new ArrayList<>()).add(target);
+    }
+
+    /**
+     * Registers all entries under {@code prefix} whose relative names match {@code filter}. Relative paths are
+     * preserved under {@code target}.
+     */
+    public void addDirectory(final String prefix, final Path target, final Predicate<String> filter) {
+        directories.add(new DirectoryRule(prefix.endsWith("/") ? prefix : prefix + "/", target.normalize(), filter));
+    }
+
+    /**
+     * Extracts all registered entries and returns the number of written files.
+     */
+    public int extract() throws IOException {
+        Set<String> extracted = new HashSet<>();
+        int count = 0;
+        for (FileHeader header : zipFile.getFileHeaders()) {
+            if (header.isDirectory()) {
+                continue;
+            }
+
+            String name = header.getFileName();
+            List<Path> targets = getTargets(name);
+            if (targets.isEmpty()) {
+                continue;
+            }
+
+            for (Path target : targets) {
+                Files.createDirectories(target.getParent());
+            }
+            long size;
+            try (ZipInputStream in = zipFile.getInputStream(header)) {
+                size = Files.copy(in, targets.get(0));
+            }
+            for (Path target : targets.subList(1, targets.size())) {
+                Files.copy(targets.get(0), target);
+            }
+            extractedBytes += size * targets.size();
+            extracted.add(name);
+            count += targets.size();
+        }
+
+        for (String name : files.keySet()) {
+            if (!extracted.contains(name)) {
+                throw new NoSuchFileException(name, null, "entry is missing in package");
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes written by {@link #extract()}.
+     */
+    public long getExtractedBytes() {
+        return extractedBytes;
+    }
+
+    private List<Path> getTargets(final String name) throws IOException {
+        List<Path> targets = new ArrayList<>(files.getOrDefault(name, List.of()));
+        for (DirectoryRule rule : directories) {
+            if (!name.startsWith(rule.prefix)) {
+                continue;
+            }
+
+            String relativeName = name.substring(rule.prefix.length());
+            if (!rule.filter.test(relativeName)) {
+                continue;
+            }
+
+            Path target = rule.target.resolve(relativeName).normalize();
+            if (!target.startsWith(rule.target)) {
+                throw new IOException(String.format("entry %s points outside of %s", name, rule.target));
+            }
+            targets.add(target);
+            break;
+        }
+        return targets;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    private record DirectoryRule(String prefix, Path target, Predicate<String> filter) {
+    }
+}
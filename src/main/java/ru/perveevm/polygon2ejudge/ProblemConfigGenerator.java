@@ -0,0 +1,213 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon.api.entities.Problem;
+import ru.perveevm.polygon.api.entities.ProblemInfo;
+import ru.perveevm.polygon.api.entities.Statement;
+import ru.perveevm.polygon.api.entities.TestGroup;
+import ru.perveevm.polygon.api.entities.enums.TestGroupFeedbackPolicy;
+import ru.perveevm.polygon.api.entities.enums.TestGroupPointsPolicy;
+import ru.perveevm.polygon.exceptions.api.PolygonSessionException;
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Generates ejudge problem configuration from problem.xml and Polygon problem metadata.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ProblemConfigGenerator {
+    private final Logger log = Logger.getLogger(ProblemConfigGenerator.class.getName());
+
+    private final String statementsLang;
+    private final Path gvaluerPath;
+    private final BlobStore blobStore;
+
+    /**
+     * @param blobStore store to link gvaluer from, or {@code null} to copy it
+     */
+    public ProblemConfigGenerator(final String statementsLang, final Path gvaluerPath, final BlobStore blobStore) {
+        this.statementsLang = statementsLang;
+        this.gvaluerPath = gvaluerPath;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Returns the {@code [problem]} section for serve.cfg. Reads problem.xml from the {@code tmp} subdirectory of
+     * {@code problemDirectory} and writes valuer.cfg and gvaluer next to it when the problem has test groups.
+     */
+    public String generate(final ProblemInfo problemInfo, final ProblemMetadata metadata, final int ejudgeProblemId,
+                           final String problemShortName, final List<String> fileNames, final Path problemDirectory)
+            throws PolygonSessionException, ContestManagerException {
+        Problem problem = metadata.getProblem();
+        ProblemTests tests;
+        try {
+            log.info(String.format("%s: parsing tests...", problem.getName()));
+            tests = ProblemTests.read(problemDirectory.resolve("tmp").resolve("problem.xml"));
+        } catch (IOException | XMLStreamException e) {
+            throw new ContestManagerException("could not parse problem.xml", e);
+        }
+        int timeLimit = problemInfo.getTimeLimit();
+        int memoryLimit = problemInfo.getMemoryLimit();
+
+        Map<String, Statement> statements = metadata.getStatements();
+        boolean pointsEnabled = tests.hasPoints();
+        boolean groupsEnabled = tests.hasGroups();
+        int totalScore = 0;
+        for (int i = 0; i < tests.size(); i++) {
+            totalScore += tests.getPoints(i);
+        }
+        String title = "Undefined";
+        if (statements.containsKey(statementsLang)) {
+            title = statements.get(statementsLang).getName();
+        } else {
+            log.warning(String.format("%s: there is no statements in %s", problem.getName(), statementsLang));
+        }
+
+        log.info(String.format("%s: generating problem config...", problem.getName()));
+        Map<String, String> config = new LinkedHashMap<>();
+        config.put("id", String.valueOf(ejudgeProblemId));
+        config.put("short_name", "\"" + problemShortName + "\"");
+        config.put("long_name", "\"" + title + "\"");
+        config.put("internal_name", "\"" + problem.getName() + "\"");
+        config.put("extid", "\"polygon:" + problem.getId() + "\"");
+        config.put("use_stdin", "");
+        config.put("use_stdout", "");
+        config.put("xml_file", "\"statement.xml\"");
+        config.put("test_pat", "\"%02d\"");
+        config.put("use_corr", "");
+        config.put("corr_pat", "\"%02d.a\"");
+        if (timeLimit % 1000 == 0) {
+            config.put("time_limit", String.valueOf(timeLimit / 1000));
+        } else {
+            config.put("time_limit_millis", String.valueOf(timeLimit));
+        }
+        config.put("real_time_limit", String.valueOf((2 * timeLimit + 999) / 1000));
+        config.put("max_vm_size", memoryLimit + "M");
+        config.put("max_stack_size", memoryLimit + "M");
+        if (pointsEnabled) {
+            int lastSample = 0;
+            while (lastSample < tests.size() && tests.isSample(lastSample)) {
+                lastSample++;
+            }
+            config.put("full_score", String.valueOf(totalScore));
+            config.put("full_user_score", String.valueOf(totalScore));
+            config.put("run_penalty", "0");
+            config.putAll(TestRanges.getScoreConfig(tests));
+            if (lastSample == 0) {
+                config.put("open_tests", String.format("\"1-%d:brief\"", tests.size()));
+            } else {
+                config.put("open_tests",
+                        String.format("\"1-%d:full,%d-%d:brief\"", lastSample, lastSample + 1, tests.size()));
+            }
+            config.put("final_open_tests", String.format("\"1-%d:full\"", tests.size()));
+        }
+        if (groupsEnabled) {
+            log.info(String.format("%s: generating valuer.cfg...", problem.getName()));
+            TestGroup[] groups = metadata.getTestGroups();
+            TestRanges.Group[] groupTests = TestRanges.getGroups(tests);
+
+            List<TestRanges.Range> openTests = new ArrayList<>();
+            StringBuilder valuer = new StringBuilder();
+
+            valuer.append("""
+                    global {
+                    	stat_to_users;
+                    }
+                    """).append(System.lineSeparator());
+
+            for (TestGroup group : groups) {
+                int groupId = tests.getGroupId(group.getName());
+                if (groupId == ProblemTests.NO_GROUP) {
+                    throw new ContestManagerException(String.format("group %s has no tests", group.getName()));
+                }
+                int first = groupTests[groupId].first();
+                int last = groupTests[groupId].last();
+                int score = groupTests[groupId].score();
+                int minScore = groupTests[groupId].minScore();
+                int maxScore = groupTests[groupId].maxScore();
+
+                switch (group.getFeedbackPolicy()) {
+                    case NONE, POINTS -> openTests.add(new TestRanges.Range(first, last, "hidden"));
+                    case ICPC -> openTests.add(new TestRanges.Range(first, last, "brief"));
+                    case COMPLETE -> openTests.add(new TestRanges.Range(first, last, "full"));
+                }
+                String dependencies = String.join(",", group.getDependencies());
+
+                valuer.append(String.format("group %s {", group.getName())).append(System.lineSeparator());
+
+                valuer.append(String.format("\ttests %d-%d;", first + 1, last + 1)).append(System.lineSeparator());
+                valuer.append(String.format("\tscore %d;", score)).append(System.lineSeparator());
+                if (group.getDependencies() != null && group.getDependencies().length > 0) {
+                    valuer.append(String.format("\trequires %s;", dependencies)).append(System.lineSeparator());
+                }
+                if (group.getFeedbackPolicy() == TestGroupFeedbackPolicy.COMPLETE
+                        || group.getPointsPolicy() == TestGroupPointsPolicy.EACH_TEST) {
+                    valuer.append("\ttest_all;").append(System.lineSeparator());
+                }
+                if (group.getPointsPolicy() == TestGroupPointsPolicy.EACH_TEST) {
+                    if (minScore != maxScore) {
+                        throw new ContestManagerException("group with EACH_TEST policy has tests with different scores");
+                    }
+                    valuer.append(String.format("\ttest_score %d;", minScore)).append(System.lineSeparator());
+                }
+                valuer.append("}").append(System.lineSeparator());
+            }
+
+            config.put("open_tests", TestRanges.formatRanges(openTests));
+            try {
+                if (blobStore != null) {
+                    blobStore.materialize(gvaluerPath, problemDirectory.resolve("gvaluer"));
+                } else {
+                    Files.copy(gvaluerPath, problemDirectory.resolve("gvaluer"),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new ContestManagerException("failed to copy gvaluer", e);
+            }
+            config.put("valuer_cmd", "gvaluer");
+            config.put("interactive_valuer", "");
+
+            try (BufferedWriter writer = Files.newBufferedWriter(problemDirectory.resolve("valuer.cfg"))) {
+                writer.write(valuer.toString());
+            } catch (IOException e) {
+                throw new ContestManagerException("failed to write valuer.cfg");
+            }
+        }
+        config.put("check_cmd", "\"" + removeExtension(fileNames.get(0)) + "\"");
+        config.put("solution_cmd", "\"" + removeExtension(fileNames.get(1)) + "\"");
+        if (fileNames.size() == 3) {
+            config.put("interactor_cmd", "\"" + removeExtension(fileNames.get(2)) + "\"");
+        }
+        config.put("enable_testlib_mode", "");
+        config.put("enable_text_form", "");
+        config.put("enable_user_input", "");
+
+        StringBuilder configString = new StringBuilder();
+        configString.append("[problem]").append(System.lineSeparator());
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                configString.append(entry.getKey());
+            } else {
+                configString.append(entry.getKey()).append(" = ").append(entry.getValue());
+            }
+            configString.append(System.lineSeparator());
+        }
+
+        return configString.toString();
+    }
+
+    private String removeExtension(final String name) {
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+}
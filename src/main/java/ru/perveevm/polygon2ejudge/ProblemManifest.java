@@ -0,0 +1,75 @@
+package ru.perveevm.polygon2ejudge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Describes which Polygon package an imported problem directory was built from.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ProblemManifest {
+    public static final String FILE_NAME = "polygon.properties";
+
+    /**
+     * Revision of manifests written before the package revision was recorded.
+     */
+    public static final int UNKNOWN_REVISION = -1;
+
+    private final int problemId;
+    private final int packageId;
+    private final int packageRevision;
+
+    public ProblemManifest(final int problemId, final int packageId, final int packageRevision) {
+        this.problemId = problemId;
+        this.packageId = packageId;
+        this.packageRevision = packageRevision;
+    }
+
+    public static ProblemManifest read(final Path problemDirectory) throws IOException {
+        Path manifestPath = problemDirectory.resolve(FILE_NAME);
+        if (!Files.exists(manifestPath)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        try {
+            return new ProblemManifest(Integer.parseInt(properties.getProperty("problem.id")),
+                    Integer.parseInt(properties.getProperty("package.id")),
+                    Integer.parseInt(properties.getProperty("package.revision", String.valueOf(UNKNOWN_REVISION))));
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed problem manifest " + manifestPath, e);
+        }
+    }
+
+    public void write(final Path problemDirectory) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("problem.id", String.valueOf(problemId));
+        properties.setProperty("package.id", String.valueOf(packageId));
+        properties.setProperty("package.revision", String.valueOf(packageRevision));
+        try (BufferedWriter writer = Files.newBufferedWriter(problemDirectory.resolve(FILE_NAME),
+                StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+    }
+
+    public int getProblemId() {
+        return problemId;
+    }
+
+    public int getPackageId() {
+        return packageId;
+    }
+
+    public int getPackageRevision() {
+        return packageRevision;
+    }
+}
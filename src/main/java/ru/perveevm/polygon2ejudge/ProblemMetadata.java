@@ -0,0 +1,179 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon.api.PolygonSession;
+import ru.perveevm.polygon.api.entities.*;
+import ru.perveevm.polygon.exceptions.api.PolygonSessionException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Memoizes Polygon API responses for one problem during a single run. Every endpoint is requested at most once,
+ * and {@link #prefetch()} fires most of them concurrently in the background. The interactor is prefetched once the
+ * problem info shows that the problem is interactive. Test groups are not prefetched: they are requested on first
+ * use, which happens only for problems whose {@code problem.xml} declares groups.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ProblemMetadata {
+    private final PolygonSession session;
+    private final Problem problem;
+    private final Executor executor;
+    private final Metrics metrics;
+
+    private final Map<String, CompletableFuture<?>> calls = new ConcurrentHashMap<>();
+
+    public ProblemMetadata(final PolygonSession session, final Problem problem, final Executor executor) {
+        this(session, problem, executor, new Metrics());
+    }
+
+    /**
+     * @param metrics metrics to record the time of every API call to
+     */
+    public ProblemMetadata(final PolygonSession session, final Problem problem, final Executor executor,
+                           final Metrics metrics) {
+        this.session = session;
+        this.problem = problem;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    public ProblemMetadata prefetch() {
+        info().thenAccept(info -> {
+            if (info.getInteractive()) {
+                interactor();
+            }
+        });
+        packages();
+        checker();
+        files();
+        solutions();
+        statements();
+        return this;
+    }
+
+    public Problem getProblem() {
+        return problem;
+    }
+
+    public ProblemInfo getInfo() throws PolygonSessionException {
+        return await(info());
+    }
+
+    public ProblemPackage[] getPackages() throws PolygonSessionException {
+        return await(packages());
+    }
+
+    public CompletableFuture<ProblemPackage[]> getPackagesAsync() {
+        return packages();
+    }
+
+    /**
+     * Forgets the memoized packages list, so that the next request returns the current state of package builds.
+     */
+    public void invalidatePackages() {
+        calls.remove("packages");
+    }
+
+    /**
+     * Starts a full package build of the latest problem revision. The build is requested at most once.
+     */
+    public CompletableFuture<Void> buildPackage() {
+        return memoize("buildPackage", () -> {
+            session.problemBuildPackage(problem.getId(), true, false);
+            return null;
+        });
+    }
+
+    public String getChecker() throws PolygonSessionException {
+        return await(checker());
+    }
+
+    public ProblemFiles getFiles() throws PolygonSessionException {
+        return await(files());
+    }
+
+    public Solution[] getSolutions() throws PolygonSessionException {
+        return await(solutions());
+    }
+
+    public String getInteractor() throws PolygonSessionException {
+        return await(interactor());
+    }
+
+    public Map<String, Statement> getStatements() throws PolygonSessionException {
+        return await(statements());
+    }
+
+    public TestGroup[] getTestGroups() throws PolygonSessionException {
+        return await(testGroups());
+    }
+
+    private CompletableFuture<ProblemInfo> info() {
+        return memoize("info", () -> session.problemInfo(problem.getId()));
+    }
+
+    private CompletableFuture<ProblemPackage[]> packages() {
+        return memoize("packages", () -> session.problemPackages(problem.getId()));
+    }
+
+    private CompletableFuture<String> checker() {
+        return memoize("checker", () -> session.problemChecker(problem.getId()));
+    }
+
+    private CompletableFuture<ProblemFiles> files() {
+        return memoize("files", () -> session.problemFiles(problem.getId()));
+    }
+
+    private CompletableFuture<Solution[]> solutions() {
+        return memoize("solutions", () -> session.problemSolutions(problem.getId()));
+    }
+
+    private CompletableFuture<String> interactor() {
+        return memoize("interactor", () -> session.problemInteractor(problem.getId()));
+    }
+
+    private CompletableFuture<Map<String, Statement>> statements() {
+        return memoize("statements", () -> session.problemStatements(problem.getId()));
+    }
+
+    private CompletableFuture<TestGroup[]> testGroups() {
+        return memoize("testGroups", () -> session.problemViewTestGroup(problem.getId(), "tests", null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> memoize(final String name, final PolygonCall<T> call) {
+        return (CompletableFuture<T>) calls.computeIfAbsent(name, key -> CompletableFuture.supplyAsync(() -> {
+            Metrics.Timer timer = metrics.start(Metrics.Phase.API);
+            try {
+                return call.call();
+            } catch (PolygonSessionException e) {
+                throw new CompletionException(e);
+            } finally {
+                timer.stop(0, 0);
+            }
+        }, executor));
+    }
+
+    private static <T> T await(final CompletableFuture<T> future) throws PolygonSessionException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof PolygonSessionException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PolygonCall<T> {
+        T call() throws PolygonSessionException;
+    }
+}
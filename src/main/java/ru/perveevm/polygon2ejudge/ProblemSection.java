@@ -0,0 +1,82 @@
+package ru.perveevm.polygon2ejudge;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One {@code [problem]} section of serve.cfg. Keeps the original text, so an untouched section is written back
+ * exactly as it was read.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ProblemSection {
+    private final String text;
+    private final Map<String, String> arguments = new LinkedHashMap<>();
+    private final Integer id;
+
+    public ProblemSection(final String text) {
+        this.text = text;
+        for (String line : text.split("\\R")) {
+            String name = getArgumentName(line);
+            if (!name.isEmpty() && !name.startsWith("[") && !arguments.containsKey(name)) {
+                arguments.put(name, getArgumentValue(line));
+            }
+        }
+
+        Integer parsedId;
+        try {
+            parsedId = arguments.get("id") == null ? null : Integer.valueOf(arguments.get("id"));
+        } catch (NumberFormatException e) {
+            parsedId = null;
+        }
+        id = parsedId;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getInternalName() {
+        return arguments.get("internal_name");
+    }
+
+    public String getShortName() {
+        return arguments.get("short_name");
+    }
+
+    public String getArgument(final String argumentName) {
+        return arguments.get(argumentName);
+    }
+
+    public Map<String, String> getArguments() {
+        return Collections.unmodifiableMap(arguments);
+    }
+
+    private static String getArgumentName(final String line) {
+        if (line.contains("=")) {
+            return line.substring(0, line.indexOf("=")).strip();
+        } else {
+            return line.strip();
+        }
+    }
+
+    private static String getArgumentValue(final String line) {
+        if (line.contains("=")) {
+            String value = line.substring(line.indexOf("=") + 1).strip();
+            if (value.startsWith("\"")) {
+                int end = value.lastIndexOf('"');
+                return end > 0 ? value.substring(1, end) : value.substring(1);
+            } else {
+                return value;
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,171 @@
+package ru.perveevm.polygon2ejudge;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests of the "tests" testset from problem.xml stored column by column: points as primitives, groups as indices
+ * into a table of distinct group names and samples as a bit set.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class ProblemTests {
+    public static final int NO_GROUP = -1;
+
+    private static final String TESTSET_NAME = "tests";
+
+    private int count;
+    private double[] points = new double[16];
+    private int[] groups = new int[16];
+    private final BitSet samples = new BitSet();
+    private boolean hasPoints;
+    private boolean hasGroups;
+
+    private final List<String> groupNames = new ArrayList<>();
+    private final Map<String, Integer> groupIds = new HashMap<>();
+
+    private ProblemTests() {
+    }
+
+    /**
+     * Reads problem.xml in a single streaming pass, skipping everything outside the "tests" testset.
+     */
+    public static ProblemTests read(final Path problemXmlPath) throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try (InputStream in = Files.newInputStream(problemXmlPath)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                ProblemTests tests = new ProblemTests();
+                if (!tests.readTestset(reader)) {
+                    throw new XMLStreamException(String.format("there is no \"%s\" testset in %s", TESTSET_NAME,
+                            problemXmlPath));
+                }
+                return tests;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private boolean readTestset(final XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("testset")
+                    && TESTSET_NAME.equals(reader.getAttributeValue(null, "name"))) {
+                break;
+            }
+        }
+        if (!reader.hasNext()) {
+            return false;
+        }
+
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            switch (reader.getLocalName()) {
+                case "test" -> {
+                    addTest(reader);
+                    depth++;
+                }
+                default -> depth++;
+            }
+        }
+        return true;
+    }
+
+    private void addTest(final XMLStreamReader reader) {
+        if (count == points.length) {
+            points = Arrays.copyOf(points, count * 2);
+            groups = Arrays.copyOf(groups, count * 2);
+        }
+
+        String pointsValue = reader.getAttributeValue(null, "points");
+        if (pointsValue != null) {
+            points[count] = Double.parseDouble(pointsValue);
+            hasPoints = true;
+        }
+
+        String group = reader.getAttributeValue(null, "group");
+        if (group != null) {
+            groups[count] = groupIds.computeIfAbsent(group, name -> {
+                groupNames.add(name);
+                return groupNames.size() - 1;
+            });
+            hasGroups = true;
+        } else {
+            groups[count] = NO_GROUP;
+        }
+
+        if ("true".equals(reader.getAttributeValue(null, "sample"))) {
+            samples.set(count);
+        }
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean hasPoints() {
+        return hasPoints;
+    }
+
+    public boolean hasGroups() {
+        return hasGroups;
+    }
+
+    /**
+     * Returns points of the test with zero-based index {@code test}, or zero if the test has no points.
+     */
+    public double getPoints(final int test) {
+        return points[test];
+    }
+
+    /**
+     * Returns id of the test's group, or {@link #NO_GROUP}.
+     */
+    public int getGroupId(final int test) {
+        return groups[test];
+    }
+
+    public String getGroupName(final int groupId) {
+        return groupNames.get(groupId);
+    }
+
+    /**
+     * Returns id of the group with the given name, or {@link #NO_GROUP} if no test belongs to it.
+     */
+    public int getGroupId(final String groupName) {
+        return groupIds.getOrDefault(groupName, NO_GROUP);
+    }
+
+    public int getGroupCount() {
+        return groupNames.size();
+    }
+
+    public boolean isSample(final int test) {
+        return samples.get(test);
+    }
+}
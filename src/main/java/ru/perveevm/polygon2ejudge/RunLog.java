@@ -0,0 +1,89 @@
+package ru.perveevm.polygon2ejudge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of runs submitted to an ejudge contest.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class RunLog {
+    private final Path path;
+
+    public RunLog(final Path path) {
+        this.path = path;
+    }
+
+    public synchronized void append(final int runId, final int problemId, final String solution) throws IOException {
+        Files.createDirectories(path.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(String.format("%d %d %s", runId, problemId, solution));
+            writer.newLine();
+        }
+    }
+
+    public synchronized List<Run> read() throws IOException {
+        List<Run> runs = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return runs;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    runs.add(new Run(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[2]));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Removes all runs of the problem.
+     */
+    public synchronized void forget(final int problemId) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (Run run : read()) {
+            if (run.problemId() != problemId) {
+                lines.add(String.format("%d %d %s", run.runId(), run.problemId(), run.solution()));
+            }
+        }
+        Path tmpPath = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+        try {
+            Files.write(tmpPath, lines, StandardCharsets.UTF_8);
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    /**
+     * Removes all runs of the contest.
+     */
+    public synchronized void clear() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    public record Run(int runId, int problemId, String solution) {
+    }
+}
@@ -0,0 +1,88 @@
+package ru.perveevm.polygon2ejudge;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Entities;
+import org.jsoup.select.Elements;
+import ru.perveevm.polygon.api.entities.Problem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * Converts Polygon HTML statements to ejudge statement.xml.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class StatementGenerator {
+    private final Logger log = Logger.getLogger(StatementGenerator.class.getName());
+
+    private final String statementsLang;
+
+    public StatementGenerator(final String statementsLang) {
+        this.statementsLang = statementsLang;
+    }
+
+    /**
+     * Writes statement.xml for the problem from the HTML statement extracted to {@code tmpDir/statements}.
+     */
+    public void generate(final Path tmpDir, final Problem problem, final Path problemDirectory,
+                         final String statementsUrl) throws IOException {
+        log.info(String.format("%s: generating statement...", problem.getName()));
+        Path statementPath = tmpDir.resolve("statements").resolve("problem.html");
+
+        String content = "No statement available";
+        if (Files.exists(statementPath)) {
+            String legend = convert(Jsoup.parse(statementPath.toFile()));
+            if (legend != null) {
+                content = legend;
+            }
+        } else {
+            log.warning(String.format("%s: there is no statements in %s", problem.getName(), statementsLang));
+        }
+
+        String statement = String.format("""
+                <?xml version="1.0" encoding="utf-8" ?>
+                <problem>
+                <statement language="ru_RU">
+                <description>
+                <p><a href = "%s">[Условия всех задач в pdf]</a></p>
+                %s
+                </description>
+                </statement>
+                </problem>
+                """, statementsUrl, content);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(problemDirectory.resolve("statement.xml"),
+                StandardCharsets.UTF_8)) {
+            writer.write(statement);
+        }
+    }
+
+    /**
+     * Converts the Polygon HTML statement to the XHTML fragment embedded into statement.xml. Returns {@code null}
+     * if the document has no problem statement.
+     */
+    public static String convert(final Document document) {
+        document.outputSettings().syntax(Document.OutputSettings.Syntax.xml);
+        document.outputSettings().escapeMode(Entities.EscapeMode.xhtml);
+        document.outputSettings().indentAmount(0).prettyPrint(false);
+        Elements legendElements = document.getElementsByClass("problem-statement");
+        if (legendElements.isEmpty()) {
+            return null;
+        }
+
+        Element legendElement = legendElements.get(0);
+        legendElement.select(".header").remove();
+        legendElement.select("img").forEach(element -> {
+            String src = element.attr("src");
+            element.attr("src", "${getfile}=" + src);
+        });
+        return legendElement.toString().replace("$$$$$$", "$$").replace("$$$", "$");
+    }
+}
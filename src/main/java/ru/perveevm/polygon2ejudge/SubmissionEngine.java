@@ -0,0 +1,190 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon2ejudge.exceptions.EjudgeSessionException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Submits solutions to ejudge with a bounded number of submissions in flight, a token bucket rate limit and
+ * exponential backoff on transient errors.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class SubmissionEngine {
+    private final Logger log = Logger.getLogger(SubmissionEngine.class.getName());
+
+    private final EjudgeSession session;
+    private final RunLog runLog;
+    private final SubmissionLedger ledger;
+    private final boolean force;
+    private final Metrics metrics;
+    private final ExecutorService executor;
+    private final TokenBucket tokenBucket;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+
+    private final List<Future<?>> submissions = new ArrayList<>();
+    private final List<String> submitted = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> skipped = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> unchanged = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param ledger ledger of submitted solutions, solutions found in it are not submitted again
+     * @param force  whether to submit solutions found in the ledger anyway
+     */
+    public SubmissionEngine(final EjudgeSession session, final RunLog runLog, final SubmissionLedger ledger,
+                            final boolean force, final Metrics metrics, final int threads, final double rate,
+                            final int maxRetries, final long initialBackoffMillis) {
+        this.session = session;
+        this.runLog = runLog;
+        this.ledger = ledger;
+        this.force = force;
+        this.metrics = metrics;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.tokenBucket = new TokenBucket(rate);
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public void submit(final int contestId, final int problemId, final Path solutionPath) {
+        String name = String.format("problem %d: %s", problemId, solutionPath.getFileName());
+        String[] parts = solutionPath.getFileName().toString().split("\\.");
+        if (parts.length != 2 || !session.isSupported(parts[1])) {
+            skipped.add(name);
+            return;
+        }
+
+        submissions.add(executor.submit(() -> {
+            long size;
+            String hash;
+            try {
+                size = Files.size(solutionPath);
+                hash = SubmissionLedger.hash(solutionPath);
+                if (!force && ledger.contains(problemId, hash)) {
+                    unchanged.add(name);
+                    return;
+                }
+            } catch (IOException e) {
+                log.warning(String.format("Could not read solution file %s (%s)", solutionPath, e.getMessage()));
+                failed.add(name);
+                return;
+            }
+
+            int runId;
+            Metrics.Timer timer = metrics.start(Metrics.Phase.SUBMISSION);
+            try {
+                runId = submitWithRetries(contestId, solutionPath, problemId, parts[1]);
+                timer.stop(size, 1);
+                log.info(String.format("Submitted %s as run %d", name, runId));
+                submitted.add(name);
+            } catch (EjudgeSessionException e) {
+                log.warning(String.format("Could not submit %s (%s)", name, e.getMessage()));
+                failed.add(name);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.add(name);
+                return;
+            }
+
+            try {
+                ledger.record(problemId, hash, solutionPath.getFileName().toString());
+            } catch (IOException e) {
+                log.warning(String.format("Could not record %s in submission ledger (%s)", name, e.getMessage()));
+            }
+            if (runId != EjudgeSession.UNKNOWN_RUN_ID) {
+                try {
+                    runLog.append(runId, problemId, solutionPath.getFileName().toString());
+                } catch (IOException e) {
+                    log.warning(String.format("Could not record run %d (%s)", runId, e.getMessage()));
+                }
+            }
+        }));
+    }
+
+    private int submitWithRetries(final int contestId, final Path source, final int problemId,
+                                  final String extension) throws EjudgeSessionException, InterruptedException {
+        long backoffMillis = initialBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            tokenBucket.acquire();
+            try {
+                return session.submitSolution(contestId, source, problemId, extension);
+            } catch (EjudgeSessionException e) {
+                if (attempt == maxRetries || !(e.getCause() instanceof IOException)) {
+                    throw e;
+                }
+                log.info(String.format("Retrying submission to problem %d in %d ms (%s)", problemId,
+                        backoffMillis, e.getMessage()));
+            }
+
+            Thread.sleep(backoffMillis + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+            backoffMillis *= 2;
+        }
+    }
+
+    /**
+     * Waits for all submissions to finish and returns their summary.
+     */
+    public Summary await() throws InterruptedException {
+        executor.shutdown();
+        for (Future<?> submission : submissions) {
+            try {
+                submission.get();
+            } catch (ExecutionException e) {
+                log.warning(String.format("Submission failed unexpectedly (%s)", e.getCause().getMessage()));
+            }
+        }
+        return new Summary(List.copyOf(submitted), List.copyOf(unchanged), List.copyOf(skipped),
+                List.copyOf(failed));
+    }
+
+    public record Summary(List<String> submitted, List<String> unchanged, List<String> skipped,
+                          List<String> failed) {
+    }
+
+    private static class TokenBucket {
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        TokenBucket(final double rate) {
+            this.rate = rate;
+            this.capacity = Math.max(1, rate);
+            this.tokens = capacity;
+        }
+
+        void acquire() throws InterruptedException {
+            if (rate <= 0) {
+                return;
+            }
+
+            while (true) {
+                long waitMillis;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / 1e9);
+                    lastRefillNanos = now;
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        return;
+                    }
+                    waitMillis = (long) Math.ceil((1 - tokens) * 1000 / rate);
+                }
+                Thread.sleep(waitMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.perveevm.polygon2ejudge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only ledger of SHA-256 hashes of solutions submitted to each problem of an ejudge contest. A solution whose
+ * hash is already recorded for the problem was submitted before and does not need to be sent again.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class SubmissionLedger {
+    private final Path path;
+    private Map<Integer, Set<String>> hashes;
+
+    public SubmissionLedger(final Path path) {
+        this.path = path;
+    }
+
+    public static String hash(final Path source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public synchronized boolean contains(final int problemId, final String hash) throws IOException {
+        return load().getOrDefault(problemId, Set.of()).contains(hash);
+    }
+
+    public synchronized void record(final int problemId, final String hash, final String solution)
+            throws IOException {
+        load();
+        Files.createDirectories(path.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(String.format("%d %s %s", problemId, hash, solution));
+            writer.newLine();
+        }
+        hashes.computeIfAbsent(problemId, id -> new HashSet<>()).add(hash);
+    }
+
+    /**
+     * Removes all records of the problem, so that its solutions are submitted again.
+     */
+    public synchronized void forget(final int problemId) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith(problemId + " ")) {
+                    lines.add(line);
+                }
+            }
+        }
+        Path tmpPath = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+        try {
+            Files.write(tmpPath, lines, StandardCharsets.UTF_8);
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+        hashes = null;
+    }
+
+    /**
+     * Removes all records of the contest.
+     */
+    public synchronized void clear() throws IOException {
+        Files.deleteIfExists(path);
+        hashes = null;
+    }
+
+    private Map<Integer, Set<String>> load() throws IOException {
+        if (hashes != null) {
+            return hashes;
+        }
+
+        hashes = new HashMap<>();
+        if (!Files.exists(path)) {
+            return hashes;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    hashes.computeIfAbsent(Integer.parseInt(parts[0]), id -> new HashSet<>()).add(parts[1]);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,213 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Range-compressed views of {@link ProblemTests} used to emit serve.cfg and valuer.cfg. Every method takes time
+ * linear in the number of tests.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public final class TestRanges {
+    private TestRanges() {
+    }
+
+    /**
+     * Inclusive range of zero-based test indices with an attached value, for example an open_tests mode.
+     */
+    public record Range(int first, int last, String value) {
+    }
+
+    /**
+     * Tests of one group: zero-based bounds, total score and the smallest and largest score of a single test.
+     */
+    public record Group(int first, int last, int score, int minScore, int maxScore) {
+    }
+
+    /**
+     * Returns {@code test_score} and {@code test_score_list} entries for serve.cfg. Scores equal to the most common
+     * one are left to {@code test_score}, the rest are listed with {@code [N]} markers in front of each run of
+     * consecutive tests. The plain list of all scores is used when it is shorter. Lengths of both lists are counted
+     * in one pass and only the emitted one is built.
+     */
+    public static Map<String, String> getScoreConfig(final ProblemTests tests) {
+        // For every score: the number of tests with it and the length of [N] markers the sparse list would need if
+        // it were the most common one, that is, in front of every test that follows a test with this score.
+        Map<Integer, int[]> stats = new HashMap<>();
+        int defaultScore = 0;
+        int defaultFrequency = 0;
+        int scoresLength = 0;
+        int[] previousStats = null;
+        for (int i = 0; i < tests.size(); i++) {
+            int score = (int) tests.getPoints(i);
+            int[] scoreStats = stats.computeIfAbsent(score, key -> new int[2]);
+            if (++scoreStats[0] > defaultFrequency) {
+                defaultScore = score;
+                defaultFrequency = scoreStats[0];
+            }
+            if (previousStats != null && previousStats != scoreStats) {
+                previousStats[1] += getLength(i + 1) + 3;
+            }
+            scoresLength += getLength(score);
+            previousStats = scoreStats;
+        }
+
+        int denseLength = scoresLength + Math.max(0, tests.size() - 1);
+        int sparseCount = tests.size() - defaultFrequency;
+        int sparseLength = scoresLength - defaultFrequency * getLength(defaultScore) + Math.max(0, sparseCount - 1)
+                + (sparseCount == 0 ? 0 : stats.get(defaultScore)[1])
+                + (tests.size() > 0 && (int) tests.getPoints(0) != defaultScore ? 4 : 0);
+
+        Map<String, String> config = new LinkedHashMap<>();
+        if (denseLength <= sparseLength + getLength(defaultScore)) {
+            StringBuilder dense = new StringBuilder(denseLength + 2).append('"');
+            for (int i = 0; i < tests.size(); i++) {
+                dense.append(i == 0 ? "" : " ").append((int) tests.getPoints(i));
+            }
+            config.put("test_score_list", dense.append('"').toString());
+            return config;
+        }
+
+        config.put("test_score", String.valueOf(defaultScore));
+        if (sparseCount > 0) {
+            StringBuilder sparse = new StringBuilder(sparseLength + 2).append('"');
+            int previous = -2;
+            for (int i = 0; i < tests.size(); i++) {
+                int score = (int) tests.getPoints(i);
+                if (score == defaultScore) {
+                    continue;
+                }
+                if (previous != -2) {
+                    sparse.append(' ');
+                }
+                if (previous != i - 1) {
+                    sparse.append('[').append(i + 1).append("] ");
+                }
+                sparse.append(score);
+                previous = i;
+            }
+            config.put("test_score_list", sparse.append('"').toString());
+        }
+        return config;
+    }
+
+    /**
+     * Returns the tests of every group, indexed by group id of {@link ProblemTests}.
+     *
+     * @throws ContestManagerException if some group is not a contiguous range of tests. The message lists every test
+     *                                 that lies outside of the first contiguous run of its group.
+     */
+    public static Group[] getGroups(final ProblemTests tests) throws ContestManagerException {
+        int groupCount = tests.getGroupCount();
+        int[] first = new int[groupCount];
+        int[] last = new int[groupCount];
+        int[] score = new int[groupCount];
+        int[] minScore = new int[groupCount];
+        int[] maxScore = new int[groupCount];
+        Arrays.fill(first, -1);
+        Map<Integer, List<Integer>> misplaced = new LinkedHashMap<>();
+
+        for (int i = 0; i < tests.size(); i++) {
+            int group = tests.getGroupId(i);
+            if (group == ProblemTests.NO_GROUP) {
+                continue;
+            }
+
+            int points = (int) tests.getPoints(i);
+            if (first[group] == -1) {
+                first[group] = i;
+                minScore[group] = points;
+                maxScore[group] = points;
+            } else if (last[group] != i - 1 || misplaced.containsKey(group)) {
+                misplaced.computeIfAbsent(group, id -> new ArrayList<>()).add(i);
+            }
+            last[group] = i;
+            score[group] += points;
+            minScore[group] = Math.min(minScore[group], points);
+            maxScore[group] = Math.max(maxScore[group], points);
+        }
+
+        if (!misplaced.isEmpty()) {
+            throw new ContestManagerException("some groups are not continuous: " + misplaced.entrySet().stream()
+                    .map(entry -> String.format("group %s has tests %s after a gap",
+                            tests.getGroupName(entry.getKey()), formatIndices(entry.getValue())))
+                    .collect(Collectors.joining("; ")));
+        }
+
+        Group[] groups = new Group[groupCount];
+        for (int group = 0; group < groupCount; group++) {
+            groups[group] = new Group(first[group], last[group], score[group], minScore[group], maxScore[group]);
+        }
+        return groups;
+    }
+
+    /**
+     * Formats ranges in ejudge {@code open_tests} syntax, merging adjacent ranges with equal values.
+     */
+    public static String formatRanges(final List<Range> ranges) {
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingInt(Range::first));
+
+        StringBuilder result = new StringBuilder();
+        Range current = null;
+        for (Range range : sorted) {
+            if (current != null && current.last() + 1 == range.first() && current.value().equals(range.value())) {
+                current = new Range(current.first(), range.last(), current.value());
+                continue;
+            }
+            appendRange(result, current);
+            current = range;
+        }
+        appendRange(result, current);
+        return result.toString();
+    }
+
+    private static void appendRange(final StringBuilder result, final Range range) {
+        if (range == null) {
+            return;
+        }
+        if (!result.isEmpty()) {
+            result.append(",");
+        }
+        result.append(String.format("%d-%d:%s", range.first() + 1, range.last() + 1, range.value()));
+    }
+
+    /**
+     * Returns the number of characters in the decimal representation of the value.
+     */
+    private static int getLength(final int value) {
+        int length = value < 0 ? 2 : 1;
+        for (long rest = Math.abs((long) value); rest >= 10; rest /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    private static String formatIndices(final List<Integer> indices) {
+        StringBuilder result = new StringBuilder();
+        int start = 0;
+        for (int i = 1; i <= indices.size(); i++) {
+            if (i < indices.size() && indices.get(i) == indices.get(i - 1) + 1) {
+                continue;
+            }
+            if (!result.isEmpty()) {
+                result.append(", ");
+            }
+            result.append(indices.get(start) + 1);
+            if (i - 1 > start) {
+                result.append("-").append(indices.get(i - 1) + 1);
+            }
+            start = i;
+        }
+        return result.toString();
+    }
+}
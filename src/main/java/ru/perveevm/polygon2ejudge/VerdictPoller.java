@@ -0,0 +1,86 @@
+package ru.perveevm.polygon2ejudge;
+
+import ru.perveevm.polygon2ejudge.exceptions.EjudgeSessionException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Waits for ejudge runs to be judged. Statuses are requested for ranges of run ids, and the polling delay grows
+ * while nothing changes.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class VerdictPoller {
+    private static final Set<String> PENDING_STATUSES = Set.of("PD", "RU", "CD", "CG", "AV", "EM");
+
+    private final Logger log = Logger.getLogger(VerdictPoller.class.getName());
+
+    private final EjudgeSession session;
+    private final int contestId;
+    private final int batchSize;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+
+    public VerdictPoller(final EjudgeSession session, final int contestId, final int batchSize,
+                         final long minDelayMillis, final long maxDelayMillis) {
+        this.session = session;
+        this.contestId = contestId;
+        this.batchSize = batchSize;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Returns final statuses of the given runs. Runs that are still not judged after the timeout are absent from
+     * the result.
+     */
+    public Map<Integer, String> poll(final Collection<Integer> runIds, final long timeoutMillis)
+            throws EjudgeSessionException, InterruptedException {
+        Map<Integer, String> verdicts = new HashMap<>();
+        TreeSet<Integer> pending = new TreeSet<>(runIds);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long delayMillis = minDelayMillis;
+
+        while (true) {
+            int judged = 0;
+            for (int[] range : getRanges(pending)) {
+                Map<Integer, String> statuses = session.getRunStatuses(contestId, range[0], range[1]);
+                for (Map.Entry<Integer, String> entry : statuses.entrySet()) {
+                    if (pending.contains(entry.getKey()) && !PENDING_STATUSES.contains(entry.getValue())) {
+                        verdicts.put(entry.getKey(), entry.getValue());
+                        pending.remove(entry.getKey());
+                        judged++;
+                    }
+                }
+            }
+
+            if (pending.isEmpty() || System.currentTimeMillis() >= deadline) {
+                return verdicts;
+            }
+
+            delayMillis = judged > 0 ? minDelayMillis : Math.min(maxDelayMillis, delayMillis * 2);
+            log.info(String.format("%d runs are judged, %d are pending, next check in %d ms",
+                    verdicts.size(), pending.size(), delayMillis));
+            Thread.sleep(delayMillis);
+        }
+    }
+
+    private List<int[]> getRanges(final TreeSet<Integer> runIds) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int runId : runIds) {
+            if (ranges.isEmpty() || runId - ranges.get(ranges.size() - 1)[0] >= batchSize) {
+                ranges.add(new int[]{runId, runId});
+            } else {
+                ranges.get(ranges.size() - 1)[1] = runId;
+            }
+        }
+        return ranges;
+    }
+}
@@ -2,9 +2,12 @@ package ru.perveevm.polygon2ejudge.cli;
 
 import picocli.CommandLine;
 import ru.perveevm.polygon2ejudge.ContestManager;
+import ru.perveevm.polygon2ejudge.ContestWatcher;
 import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
 import ru.perveevm.polygon2ejudge.exceptions.EjudgeSessionException;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 /**
@@ -12,19 +15,77 @@ import java.util.concurrent.Callable;
  */
 @CommandLine.Command(name = "polygon2ejudge")
 public class Commands implements Callable<Integer> {
+    private final ContestManager manager;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    /**
+     * Creates commands that construct a new {@link ContestManager} for every invocation.
+     */
+    public Commands() {
+        this(null);
+    }
+
+    /**
+     * Creates commands that run on the given long-lived manager.
+     */
+    public Commands(final ContestManager manager) {
+        this.manager = manager;
+    }
+
     @CommandLine.Command(name = "ic", description = "Import contest from Polygon to ejudge")
     public Integer importContest(
+            @CommandLine.Parameters(index = "0", description = "Polygon contest ID") final int polygonContestId,
+            @CommandLine.Parameters(index = "1", description = "Ejudge contest ID") final int ejudgeContestId,
+            @CommandLine.Option(names = {"-b", "--build"},
+                    description = "Build missing and outdated packages in Polygon before importing")
+            final boolean buildPackages,
+            @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
+            boolean usageHelpRequested) {
+        try {
+            getManager().importContest(polygonContestId, List.of(ejudgeContestId), buildPackages);
+            return 0;
+        } catch (ContestManagerException e) {
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        }
+    }
+
+    @CommandLine.Command(name = "icm", description = "Import contest from Polygon to several ejudge contests at once")
+    public Integer importContestToMany(
+            @CommandLine.Parameters(index = "0", description = "Polygon contest ID") final int polygonContestId,
+            @CommandLine.Parameters(index = "1..*", arity = "1..*", description = "Ejudge contest IDs")
+            final List<Integer> ejudgeContestIds,
+            @CommandLine.Option(names = {"-b", "--build"},
+                    description = "Build missing and outdated packages in Polygon before importing")
+            final boolean buildPackages,
+            @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
+            boolean usageHelpRequested) {
+        try {
+            getManager().importContest(polygonContestId, ejudgeContestIds, buildPackages);
+            return 0;
+        } catch (ContestManagerException e) {
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        }
+    }
+
+    @CommandLine.Command(name = "sy",
+            description = "Synchronize ejudge contest with Polygon, re-importing only problems with new packages")
+    public Integer syncContest(
             @CommandLine.Parameters(index = "0", description = "Polygon contest ID") final int polygonContestId,
             @CommandLine.Parameters(index = "1", description = "Ejudge contest ID") final int ejudgeContestId,
             @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
             boolean usageHelpRequested) {
         try {
-            ContestManager manager = new ContestManager();
-            manager.importContest(polygonContestId, ejudgeContestId);
+            getManager().syncContest(polygonContestId, ejudgeContestId);
             return 0;
         } catch (ContestManagerException e) {
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
             return 1;
         }
     }
@@ -36,12 +97,11 @@ public class Commands implements Callable<Integer> {
             @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
             boolean usageHelpRequested) {
         try {
-            ContestManager manager = new ContestManager();
-            manager.removeProblem(ejudgeContestId, problemId);
+            getManager().removeProblem(ejudgeContestId, problemId);
             return 0;
         } catch (ContestManagerException e) {
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
             return 1;
         }
     }
@@ -52,49 +112,162 @@ public class Commands implements Callable<Integer> {
             @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
             boolean usageHelpRequested) {
         try {
-            ContestManager manager = new ContestManager();
-            manager.removeContest(ejudgeContestId);
+            getManager().removeContest(ejudgeContestId);
             return 0;
         } catch (ContestManagerException e) {
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
             return 1;
         }
     }
 
     @CommandLine.Command(name = "sp",
-            description = "Submit all problem solutions to ejudge. Only C++, Python, Java ans Pascal are supported")
+            description = "Submit all problem solutions to ejudge. Languages are chosen by file extension, "
+                    + "see ejudge.lang.<extension> properties")
     public Integer submitProblem(
             @CommandLine.Parameters(index = "0", description = "Ejudge contest ID") final int ejudgeContestId,
             @CommandLine.Parameters(index = "1", description = "Problem ID") final int problemId,
+            @CommandLine.Option(names = {"-f", "--force"},
+                    description = "Submit solutions even if they were submitted before") final boolean force,
             @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
             boolean usageHelpRequested) {
         try {
-            ContestManager manager = new ContestManager();
-            manager.submitProblem(ejudgeContestId, problemId);
+            getManager().submitProblem(ejudgeContestId, problemId, force);
             return 0;
         } catch (ContestManagerException | EjudgeSessionException e) {
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
             return 1;
         }
     }
 
     @CommandLine.Command(name = "sc",
-            description = "Submit all contest solutions to ejudge. Only C++, Python, Java and Pascal are supported")
+            description = "Submit all contest solutions to ejudge. Languages are chosen by file extension, "
+                    + "see ejudge.lang.<extension> properties")
     public Integer submitContest(
+            @CommandLine.Parameters(index = "0", description = "Ejudge contest ID") final int ejudgeContestId,
+            @CommandLine.Option(names = {"-f", "--force"},
+                    description = "Submit solutions even if they were submitted before") final boolean force,
+            @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
+            boolean usageHelpRequested) {
+        try {
+            getManager().submitContest(ejudgeContestId, force);
+            return 0;
+        } catch (ContestManagerException | EjudgeSessionException e) {
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        }
+    }
+
+    @CommandLine.Command(name = "vc",
+            description = "Wait for submitted runs and check their verdicts against Polygon solution tags")
+    public Integer verifyContest(
             @CommandLine.Parameters(index = "0", description = "Ejudge contest ID") final int ejudgeContestId,
             @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
             boolean usageHelpRequested) {
         try {
-            ContestManager manager = new ContestManager();
-            manager.submitContest(ejudgeContestId);
+            getManager().verifyContest(ejudgeContestId);
             return 0;
         } catch (ContestManagerException | EjudgeSessionException e) {
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        }
+    }
+
+    @CommandLine.Command(name = "gc", description = "Remove deduplicated files that are not used by any problem")
+    public Integer collectGarbage(
+            @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
+            boolean usageHelpRequested) {
+        try {
+            getManager().collectGarbage();
+            return 0;
+        } catch (ContestManagerException e) {
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        }
+    }
+
+    @CommandLine.Command(name = "watch",
+            description = "Keep ejudge contests in sync with Polygon, re-importing problems as new packages appear")
+    public Integer watch(
+            @CommandLine.Parameters(arity = "1..*", paramLabel = "<polygonId>:<ejudgeIds>",
+                    description = "Polygon contest ID and comma-separated IDs of the ejudge contests it is imported to")
+            final List<String> mappings,
+            @CommandLine.Option(names = "--min-interval", defaultValue = "60",
+                    description = "Polling interval right after a change, in seconds") final long minInterval,
+            @CommandLine.Option(names = "--max-interval", defaultValue = "1800",
+                    description = "Longest polling interval of an unchanged contest, in seconds")
+            final long maxInterval,
+            @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
+            boolean usageHelpRequested) {
+        if (manager != null) {
+            spec.commandLine().getOut().println("Watching is not supported by daemon, run it directly");
+            return 1;
+        }
+        try {
+            List<ContestWatcher.WatchedContest> contests = mappings.stream()
+                    .map(ContestWatcher.WatchedContest::parse)
+                    .toList();
+            try (ContestManager watcherManager = new ContestManager()) {
+                closeOnShutdown(watcherManager);
+                new ContestWatcher(watcherManager, contests, minInterval, maxInterval).run();
+            }
+            return 0;
+        } catch (IllegalArgumentException | ContestManagerException | IOException e) {
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    @CommandLine.Command(name = "daemon",
+            description = "Keep a warm manager running and execute commands forwarded from other invocations")
+    public Integer daemon(
+            @CommandLine.Option(names = {"-p", "--port"}, defaultValue = "0",
+                    description = "Loopback port to listen on, random by default") final int port,
+            @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
+            boolean usageHelpRequested) {
+        if (manager != null) {
+            spec.commandLine().getOut().println("Daemon is already running");
             return 1;
         }
+        try {
+            try (ContestManager daemonManager = new ContestManager()) {
+                closeOnShutdown(daemonManager);
+                new Daemon(daemonManager, Daemon.getDaemonFile(), port).run();
+            }
+            return 0;
+        } catch (ContestManagerException | IOException e) {
+            spec.commandLine().getOut().println(e.getMessage());
+            e.printStackTrace(spec.commandLine().getErr());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /**
+     * Closes the manager when the process is terminated. Long-running commands block until then, so the
+     * try-with-resources around them never gets to close it.
+     */
+    private static void closeOnShutdown(final ContestManager manager) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                manager.close();
+            } catch (IOException ignored) {
+            }
+        }));
+    }
+
+    private ContestManager getManager() throws ContestManagerException {
+        return manager != null ? manager : new ContestManager();
     }
 
     @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message")
@@ -102,7 +275,7 @@ public class Commands implements Callable<Integer> {
 
     @Override
     public Integer call() {
-        System.out.println("Subcommand expected, please, read help");
+        spec.commandLine().getOut().println("Subcommand expected, please, read help");
         return 0;
     }
 }
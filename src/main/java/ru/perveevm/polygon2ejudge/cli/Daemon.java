@@ -0,0 +1,188 @@
+package ru.perveevm.polygon2ejudge.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import picocli.CommandLine;
+import ru.perveevm.polygon2ejudge.ContestManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * Loopback HTTP server that runs commands on one long-lived {@link ContestManager}. Jobs are executed one at a time,
+ * their output and log records are streamed back to the client followed by the exit code.
+ * <p>
+ * The port and a random access token are published in a daemon file readable only by the owner, so other local
+ * users cannot submit jobs.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class Daemon {
+    /**
+     * Marks the last line of a response, which holds the exit code of the command.
+     */
+    static final char EXIT_CODE_MARKER = '\0';
+    static final String TOKEN_HEADER = "X-Polygon2ejudge-Token";
+    static final String RUN_PATH = "/run";
+
+    private final Logger log = Logger.getLogger(Daemon.class.getName());
+
+    private final ContestManager manager;
+    private final Path daemonFile;
+    private final int port;
+    private final String token = HexFormat.of().formatHex(generateToken());
+
+    public Daemon(final ContestManager manager, final Path daemonFile, final int port) {
+        this.manager = manager;
+        this.daemonFile = daemonFile;
+        this.port = port;
+    }
+
+    private static byte[] generateToken() {
+        byte[] token = new byte[32];
+        new SecureRandom().nextBytes(token);
+        return token;
+    }
+
+    /**
+     * Returns path to the daemon file configured in app.properties, relative paths are resolved against the contests
+     * directory.
+     */
+    static Path getDaemonFile() throws IOException {
+        try (InputStream in = Daemon.class.getClassLoader().getResourceAsStream("app.properties")) {
+            Properties properties = new Properties();
+            properties.load(in);
+            Path contestsDir = Path.of(properties.getProperty("ejudge.contestsDir"));
+            String daemonFile = properties.getProperty("daemon.file", "");
+            if (daemonFile.isBlank()) {
+                return contestsDir.resolve(".polygon2ejudge").resolve("daemon.properties");
+            }
+            return contestsDir.resolve(daemonFile);
+        }
+    }
+
+    /**
+     * Starts the server and blocks until the process is terminated.
+     */
+    public void run() throws IOException, InterruptedException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(RUN_PATH, this::handle);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        server.setExecutor(executor);
+        server.start();
+
+        publish(server.getAddress().getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            executor.shutdown();
+            try {
+                Files.deleteIfExists(daemonFile);
+            } catch (IOException ignored) {
+            }
+        }));
+        log.info(String.format("Daemon is listening on %s", server.getAddress()));
+
+        Thread.currentThread().join();
+    }
+
+    private void publish(final int actualPort) throws IOException {
+        Files.createDirectories(daemonFile.toAbsolutePath().getParent());
+        Path tmpFile = Files.createTempFile(daemonFile.toAbsolutePath().getParent(), ".daemon", ".tmp",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        try {
+            Properties properties = new Properties();
+            properties.setProperty("port", String.valueOf(actualPort));
+            properties.setProperty("token", token);
+            try (OutputStream out = Files.newOutputStream(tmpFile)) {
+                properties.store(out, null);
+            }
+            Files.move(tmpFile, daemonFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String clientToken = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+            if (clientToken == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                    clientToken.getBytes(StandardCharsets.UTF_8))) {
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String[] args;
+            try {
+                args = new Gson().fromJson(new String(exchange.getRequestBody().readAllBytes(),
+                        StandardCharsets.UTF_8), String[].class);
+            } catch (JsonParseException e) {
+                args = null;
+            }
+            if (args == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            log.info(String.format("Running job: %s", String.join(" ", args)));
+            OutputStream body = exchange.getResponseBody();
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), true);
+            int exitCode = execute(args, body, out);
+            out.print(EXIT_CODE_MARKER);
+            out.println(exitCode);
+        }
+    }
+
+    private int execute(final String[] args, final OutputStream body, final PrintWriter out) throws IOException {
+        StreamHandler handler = new StreamHandler(body, new SimpleFormatter()) {
+            @Override
+            public synchronized void publish(final LogRecord record) {
+                out.flush();
+                super.publish(record);
+                flush();
+            }
+        };
+        handler.setEncoding(StandardCharsets.UTF_8.name());
+
+        Logger rootLogger = LogManager.getLogManager().getLogger("");
+        rootLogger.addHandler(handler);
+        try {
+            return new CommandLine(new Commands(manager))
+                    .setOut(out)
+                    .setErr(out)
+                    .execute(args);
+        } finally {
+            rootLogger.removeHandler(handler);
+            handler.flush();
+            out.flush();
+        }
+    }
+}
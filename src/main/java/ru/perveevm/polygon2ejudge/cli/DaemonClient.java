@@ -0,0 +1,90 @@
+package ru.perveevm.polygon2ejudge.cli;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Forwards a command line to a running {@link Daemon} and prints its output.
+ *
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+public class DaemonClient {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(500);
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Runs the command on the daemon and returns its exit code, or {@code null} if no daemon is reachable and the
+     * command should be executed locally.
+     */
+    public static Integer tryForward(final String[] args) {
+        Properties daemon = new Properties();
+        try {
+            Path daemonFile = Daemon.getDaemonFile();
+            if (!Files.isReadable(daemonFile)) {
+                return null;
+            }
+            try (InputStream in = Files.newInputStream(daemonFile)) {
+                daemon.load(in);
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(String.format("http://127.0.0.1:%s%s", daemon.getProperty("port"), Daemon.RUN_PATH)))
+                .header(Daemon.TOKEN_HEADER, daemon.getProperty("token", ""))
+                .POST(HttpRequest.BodyPublishers.ofString(new Gson().toJson(args), StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<InputStream> response;
+        try {
+            response = HttpClient.newBuilder()
+                    .connectTimeout(CONNECT_TIMEOUT)
+                    .build()
+                    .send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        if (response.statusCode() != 200) {
+            System.err.printf("Daemon rejected the command with HTTP status %d%n", response.statusCode());
+            return 1;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int marker = line.indexOf(Daemon.EXIT_CODE_MARKER);
+                if (marker != -1) {
+                    if (marker > 0) {
+                        System.out.println(line.substring(0, marker));
+                    }
+                    return Integer.parseInt(line.substring(marker + 1).strip());
+                }
+                System.out.println(line);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.printf("Lost connection to daemon (%s)%n", e.getMessage());
+            return 1;
+        }
+        System.err.println("Daemon closed the connection before the command finished");
+        return 1;
+    }
+}
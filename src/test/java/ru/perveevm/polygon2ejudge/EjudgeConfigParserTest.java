@@ -0,0 +1,187 @@
+package ru.perveevm.polygon2ejudge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.perveevm.polygon2ejudge.exceptions.ContestManagerException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+class EjudgeConfigParserTest {
+    private static final String CONFIG = lines(
+            "# -*- coding: utf-8 -*-",
+            "contest_time = 0",
+            "score_system = kirov",
+            "",
+            "[language]",
+            "id = 3",
+            "short_name = \"g++\"",
+            "",
+            "[problem]",
+            "abstract",
+            "short_name = \"Generic\"",
+            "",
+            "[problem]",
+            "id = 1",
+            "super = \"Generic\"",
+            "short_name = \"A\"",
+            "internal_name = \"aplusb\"",
+            "use_stdin",
+            "",
+            "[problem]",
+            "id = 2",
+            "short_name = \"B\"",
+            "internal_name = \"bbb\"",
+            "",
+            "[tester]",
+            "name = Generic",
+            "arch = \"\"",
+            "");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesUnchangedConfigVerbatim() throws IOException {
+        Path configPath = Files.writeString(directory.resolve("serve.cfg"), CONFIG, StandardCharsets.UTF_8);
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        parser.parse(configPath);
+
+        assertEquals(CONFIG, parser.toString());
+        parser.write(configPath);
+        assertEquals(CONFIG, Files.readString(configPath, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void indexesProblems() throws IOException, ContestManagerException {
+        Path configPath = Files.writeString(directory.resolve("serve.cfg"), CONFIG, StandardCharsets.UTF_8);
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        parser.parse(configPath);
+
+        assertEquals(2, parser.getProblemIdByInternalName("bbb"));
+        assertEquals("aplusb", parser.getProblemInternalNameById(1));
+        assertEquals(1, parser.getProblemIdByShortName("A"));
+        assertEquals(2, parser.getMaxProblemId());
+        assertNull(parser.findProblemIdByInternalName("ccc"));
+    }
+
+    @Test
+    void keepsOtherSectionsWhenProblemsChange() throws IOException, ContestManagerException {
+        Path configPath = Files.writeString(directory.resolve("serve.cfg"), CONFIG, StandardCharsets.UTF_8);
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        parser.parse(configPath);
+
+        parser.removeProblemById(1);
+        parser.replaceProblemById(2, lines("[problem]", "id = 2", "internal_name = \"b2\"", ""));
+        parser.addProblem(lines("[problem]", "id = 3", "internal_name = \"c\"", ""));
+        parser.write(configPath);
+
+        assertEquals(lines(
+                "# -*- coding: utf-8 -*-",
+                "contest_time = 0",
+                "score_system = kirov",
+                "",
+                "[language]",
+                "id = 3",
+                "short_name = \"g++\"",
+                "",
+                "[problem]",
+                "abstract",
+                "short_name = \"Generic\"",
+                "",
+                "[problem]",
+                "id = 2",
+                "internal_name = \"b2\"",
+                "",
+                "[problem]",
+                "id = 3",
+                "internal_name = \"c\"",
+                "",
+                "[tester]",
+                "name = Generic",
+                "arch = \"\"",
+                ""), Files.readString(configPath, StandardCharsets.UTF_8));
+        assertNull(parser.findProblemIdByInternalName("bbb"));
+        assertEquals(2, parser.getProblemIdByInternalName("b2"));
+    }
+
+    @Test
+    void keepsSectionsBetweenProblemsInPlace() throws IOException, ContestManagerException {
+        String config = lines(
+                "contest_time = 0",
+                "",
+                "[problem]",
+                "id = 1",
+                "internal_name = \"a\"",
+                "",
+                "[language]",
+                "id = 3",
+                "short_name = \"g++\"",
+                "",
+                "[problem]",
+                "id = 2",
+                "internal_name = \"b\"",
+                "",
+                "[tester]",
+                "name = Generic",
+                "");
+        Path configPath = Files.writeString(directory.resolve("serve.cfg"), config, StandardCharsets.UTF_8);
+        EjudgeConfigParser parser = new EjudgeConfigParser();
+        parser.parse(configPath);
+        assertEquals(config, parser.toString());
+
+        parser.replaceProblemById(1, lines("[problem]", "id = 1", "internal_name = \"a2\"", ""));
+        parser.addProblem(lines("[problem]", "id = 3", "internal_name = \"c\"", ""));
+        assertEquals(lines(
+                "contest_time = 0",
+                "",
+                "[problem]",
+                "id = 1",
+                "internal_name = \"a2\"",
+                "",
+                "[language]",
+                "id = 3",
+                "short_name = \"g++\"",
+                "",
+                "[problem]",
+                "id = 2",
+                "internal_name = \"b\"",
+                "",
+                "[problem]",
+                "id = 3",
+                "internal_name = \"c\"",
+                "",
+                "[tester]",
+                "name = Generic",
+                ""), parser.toString());
+
+        parser.clearProblems();
+        parser.addProblem(lines("[problem]", "id = 4", "internal_name = \"d\"", ""));
+        assertEquals(lines(
+                "contest_time = 0",
+                "",
+                "[problem]",
+                "id = 4",
+                "internal_name = \"d\"",
+                "",
+                "[language]",
+                "id = 3",
+                "short_name = \"g++\"",
+                "",
+                "[tester]",
+                "name = Generic",
+                ""), parser.toString());
+    }
+
+    private static String lines(final String... lines) {
+        return String.join(System.lineSeparator(), lines) + System.lineSeparator();
+    }
+}
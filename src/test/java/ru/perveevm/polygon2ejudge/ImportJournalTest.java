@@ -0,0 +1,78 @@
+package ru.perveevm.polygon2ejudge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+class ImportJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopensFinishedProblems() throws IOException {
+        Path path = directory.resolve("import.journal");
+        ImportJournal journal = ImportJournal.open(path, "polygon 1 ejudge 2");
+        journal.problemDone(1, "aplusb", "[problem]\nid = 1\n");
+        journal.problemDone(2, "bbb", "[problem]\nid = 2\n");
+
+        ImportJournal reopened = ImportJournal.open(path, "other job");
+        assertEquals("polygon 1 ejudge 2", reopened.getJob());
+        assertEquals("[problem]\nid = 1\n", reopened.getProblemConfig(1, "aplusb"));
+        assertEquals("[problem]\nid = 2\n", reopened.getProblemConfig(2, "bbb"));
+        assertNull(reopened.getProblemConfig(2, "renamed"));
+        assertNull(reopened.getProblemConfig(3, "ccc"));
+        assertFalse(reopened.isWritten());
+    }
+
+    @Test
+    void discardsTornTail() throws IOException {
+        Path path = directory.resolve("import.journal");
+        ImportJournal journal = ImportJournal.open(path, "polygon 1 ejudge 2");
+        journal.problemDone(1, "aplusb", "config");
+        long intactSize = Files.size(path);
+        Files.writeString(path, "problem 2 YmJi", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ImportJournal reopened = ImportJournal.open(path, "polygon 1 ejudge 2");
+        assertEquals(intactSize, Files.size(path));
+        assertEquals("config", reopened.getProblemConfig(1, "aplusb"));
+        assertNull(reopened.getProblemConfig(2, "bbb"));
+
+        reopened.configWritten();
+        ImportJournal written = ImportJournal.open(path, "polygon 1 ejudge 2");
+        assertTrue(written.isWritten());
+        assertEquals("config", written.getProblemConfig(1, "aplusb"));
+    }
+
+    @Test
+    void rejectsJournalWithoutCompleteHeader() throws IOException {
+        Path path = directory.resolve("import.journal");
+        Files.writeString(path, "job cG9seWdvbg", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> ImportJournal.open(path, "polygon 1 ejudge 2"));
+
+        Files.writeString(path, "not a journal\n", StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> ImportJournal.open(path, "polygon 1 ejudge 2"));
+    }
+
+    @Test
+    void finishDeletesJournal() throws IOException {
+        Path path = directory.resolve("state").resolve("import.journal");
+        ImportJournal journal = ImportJournal.open(path, "polygon 1 ejudge 2");
+        assertTrue(Files.exists(path));
+        journal.finish();
+        assertFalse(Files.exists(path));
+    }
+}
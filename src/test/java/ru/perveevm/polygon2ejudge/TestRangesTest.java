@@ -0,0 +1,63 @@
+package ru.perveevm.polygon2ejudge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Mike Perveev (perveev_m@mail.ru)
+ */
+class TestRangesTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void formatsSortedAndMergedRanges() {
+        assertEquals("", TestRanges.formatRanges(List.of()));
+        assertEquals("1-3:full,4-4:brief,5-9:hidden", TestRanges.formatRanges(List.of(
+                new TestRanges.Range(4, 6, "hidden"),
+                new TestRanges.Range(0, 1, "full"),
+                new TestRanges.Range(7, 8, "hidden"),
+                new TestRanges.Range(2, 2, "full"),
+                new TestRanges.Range(3, 3, "brief"))));
+        assertEquals("1-2:full,4-5:full", TestRanges.formatRanges(List.of(
+                new TestRanges.Range(0, 1, "full"),
+                new TestRanges.Range(3, 4, "full"))));
+    }
+
+    @Test
+    void listsAllScoresWhenTheyAreShorter() throws IOException, XMLStreamException {
+        assertEquals(Map.of("test_score_list", "\"1 2 3\""), TestRanges.getScoreConfig(readTests(1, 2, 3)));
+        assertEquals(Map.of("test_score_list", "\"5\""), TestRanges.getScoreConfig(readTests(5)));
+        assertEquals(Map.of("test_score_list", "\"\""), TestRanges.getScoreConfig(readTests()));
+    }
+
+    @Test
+    void listsOnlyScoresDifferentFromTheMostCommonOne() throws IOException, XMLStreamException {
+        assertEquals(Map.of("test_score", "10"),
+                TestRanges.getScoreConfig(readTests(10, 10, 10, 10, 10, 10)));
+        assertEquals(Map.of("test_score", "10", "test_score_list", "\"[3] 25 30 [7] 0\""),
+                TestRanges.getScoreConfig(readTests(10, 10, 25, 30, 10, 10, 0, 10, 10, 10, 10, 10)));
+        assertEquals(Map.of("test_score", "1", "test_score_list", "\"[1] 100\""),
+                TestRanges.getScoreConfig(readTests(100, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1)));
+    }
+
+    private ProblemTests readTests(final int... points) throws IOException, XMLStreamException {
+        StringBuilder problemXml = new StringBuilder("<problem><judging><testset name=\"tests\"><tests>");
+        for (int score : points) {
+            problemXml.append(String.format("<test method=\"manual\" points=\"%d.0\"/>", score));
+        }
+        problemXml.append("</tests></testset></judging></problem>");
+        return ProblemTests.read(Files.writeString(directory.resolve("problem.xml"), problemXml,
+                StandardCharsets.UTF_8));
+    }
+}